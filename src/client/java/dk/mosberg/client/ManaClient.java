@@ -3,6 +3,7 @@ package dk.mosberg.client;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import dk.mosberg.Mana;
+import dk.mosberg.client.network.ManaSyncClient;
 import dk.mosberg.client.overlay.ManaHudOverlay;
 import dk.mosberg.client.renderer.OverlayRenderer;
 import dk.mosberg.client.util.ColorHelper;
@@ -25,6 +26,9 @@ public class ManaClient implements ClientModInitializer {
 		// Initialize client-side rendering systems
 		OverlayRenderer.initialize();
 
+		// Receive the player's mana from the server
+		ManaSyncClient.register();
+
 		// Register mana HUD overlay
 		ManaHudOverlay.register();
 
@@ -1,6 +1,7 @@
 package dk.mosberg.client.config;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.jetbrains.annotations.NotNull;
 import com.terraformersmc.modmenu.api.ConfigScreenFactory;
 import com.terraformersmc.modmenu.api.ModMenuApi;
@@ -34,17 +35,24 @@ public class ManaModMenu implements ModMenuApi {
          */
         @NotNull
         private static Screen createConfigScreen(Screen parent) {
+                // Entries record their changes here; the saving runnable applies them as one batch
+                // so subscribers see a single change
+                List<Runnable> changes = new ArrayList<>();
                 ConfigBuilder builder = ConfigBuilder.create().setParentScreen(parent)
                                 .setTitle(Text.translatable("mana.config.title"))
                                 .setSavingRunnable(() -> {
-                                        try {
-                                                ManaConfig.save();
-                                                Mana.LOGGER.info(
-                                                                "Configuration saved successfully");
-                                        } catch (IOException e) {
-                                                Mana.LOGGER.error("Failed to save configuration",
-                                                                e);
-                                        }
+                                        ManaConfig.batch(() -> changes.forEach(Runnable::run));
+                                        changes.clear();
+                                        ManaConfig.saveAsync().whenComplete((result, error) -> {
+                                                if (error != null) {
+                                                        Mana.LOGGER.error(
+                                                                        "Failed to save configuration",
+                                                                        error);
+                                                } else {
+                                                        Mana.LOGGER.info(
+                                                                        "Configuration saved successfully");
+                                                }
+                                        });
                                 });
 
                 // Create entry builder
@@ -62,7 +70,9 @@ public class ManaModMenu implements ModMenuApi {
                                 .setDefaultValue(true)
                                 .setTooltip(Text.translatable(
                                                 "mana.config.overlay.enabled.tooltip"))
-                                .setSaveConsumer(ManaConfig::setOverlayEnabled).build());
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setOverlayEnabled(value)))
+                                .build());
 
                 // Overlay Scale
                 overlayCategory.addEntry(entryBuilder
@@ -70,7 +80,9 @@ public class ManaModMenu implements ModMenuApi {
                                                 ManaConfig.getOverlayScale())
                                 .setDefaultValue(1.0).setMin(0.5).setMax(2.0)
                                 .setTooltip(Text.translatable("mana.config.overlay.scale.tooltip"))
-                                .setSaveConsumer(ManaConfig::setOverlayScale).build());
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setOverlayScale(value)))
+                                .build());
 
                 // Horizontal Offset
                 overlayCategory.addEntry(entryBuilder
@@ -79,7 +91,9 @@ public class ManaModMenu implements ModMenuApi {
                                 .setDefaultValue(0)
                                 .setTooltip(Text.translatable(
                                                 "mana.config.overlay.xOffset.tooltip"))
-                                .setSaveConsumer(ManaConfig::setOverlayXOffset).build());
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setOverlayXOffset(value)))
+                                .build());
 
                 // Vertical Offset
                 overlayCategory.addEntry(entryBuilder
@@ -88,7 +102,9 @@ public class ManaModMenu implements ModMenuApi {
                                 .setDefaultValue(0)
                                 .setTooltip(Text.translatable(
                                                 "mana.config.overlay.yOffset.tooltip"))
-                                .setSaveConsumer(ManaConfig::setOverlayYOffset).build());
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setOverlayYOffset(value)))
+                                .build());
 
                 // Transparency
                 overlayCategory.addEntry(entryBuilder
@@ -99,7 +115,9 @@ public class ManaModMenu implements ModMenuApi {
                                 .setDefaultValue(1.0).setMin(0.0).setMax(1.0)
                                 .setTooltip(Text.translatable(
                                                 "mana.config.overlay.transparency.tooltip"))
-                                .setSaveConsumer(ManaConfig::setOverlayTransparency).build());
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setOverlayTransparency(value)))
+                                .build());
 
                 // Mana Bar Enabled
                 overlayCategory.addEntry(entryBuilder
@@ -109,7 +127,9 @@ public class ManaModMenu implements ModMenuApi {
                                 .setDefaultValue(true)
                                 .setTooltip(Text.translatable(
                                                 "mana.config.manaBar.enabled.tooltip"))
-                                .setSaveConsumer(ManaConfig::setManaBarEnabled).build());
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setManaBarEnabled(value)))
+                                .build());
 
                 // === Gameplay Balance Category ===
                 ConfigCategory gameplayCategory = builder.getOrCreateCategory(
@@ -124,7 +144,9 @@ public class ManaModMenu implements ModMenuApi {
                                 .setDefaultValue(1.0).setMin(0.0).setMax(10.0)
                                 .setTooltip(Text.translatable(
                                                 "mana.config.spell.costMultiplier.tooltip"))
-                                .setSaveConsumer(ManaConfig::setSpellManaCostMultiplier).build());
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setSpellManaCostMultiplier(value)))
+                                .build());
 
                 // Ritual Difficulty Multiplier
                 gameplayCategory.addEntry(entryBuilder
@@ -134,13 +156,50 @@ public class ManaModMenu implements ModMenuApi {
                                 .setDefaultValue(1.0).setMin(0.0).setMax(10.0)
                                 .setTooltip(Text.translatable(
                                                 "mana.config.ritual.difficultyMultiplier.tooltip"))
-                                .setSaveConsumer(ManaConfig::setRitualDifficultyMultiplier)
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setRitualDifficultyMultiplier(value)))
+                                .build());
+
+                // Lazy Regeneration
+                gameplayCategory.addEntry(entryBuilder
+                                .startBooleanToggle(Text.translatable("mana.config.regen.lazy"),
+                                                ManaConfig.isLazyRegenEnabled())
+                                .setDefaultValue(true)
+                                .setTooltip(Text.translatable("mana.config.regen.lazy.tooltip"))
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setLazyRegenEnabled(value)))
                                 .build());
 
                 // === Advanced Settings Category ===
                 ConfigCategory advancedCategory = builder.getOrCreateCategory(
                                 Text.translatable("mana.config.category.advanced"));
 
+                // Write-Behind Persistence
+                advancedCategory.addEntry(entryBuilder
+                                .startBooleanToggle(
+                                                Text.translatable(
+                                                                "mana.config.persistence.writeBehind"),
+                                                ManaConfig.isWriteBehindEnabled())
+                                .setDefaultValue(true)
+                                .setTooltip(Text.translatable(
+                                                "mana.config.persistence.writeBehind.tooltip"))
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setWriteBehindEnabled(value)))
+                                .build());
+
+                // Flush Interval
+                advancedCategory.addEntry(entryBuilder
+                                .startDoubleField(
+                                                Text.translatable(
+                                                                "mana.config.persistence.flushInterval"),
+                                                ManaConfig.getFlushIntervalSeconds())
+                                .setDefaultValue(5.0).setMin(0.5).setMax(60.0)
+                                .setTooltip(Text.translatable(
+                                                "mana.config.persistence.flushInterval.tooltip"))
+                                .setSaveConsumer(value -> changes
+                                                .add(() -> ManaConfig.setFlushIntervalSeconds(value)))
+                                .build());
+
                 // Reset to Defaults Button
                 advancedCategory.addEntry(entryBuilder
                                 .startTextDescription(
@@ -0,0 +1,34 @@
+package dk.mosberg.client.network;
+
+import dk.mosberg.client.state.ManaState;
+import dk.mosberg.network.ManaSyncPayload;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+
+/**
+ * Receives mana sync payloads into {@link ManaState}.
+ */
+public final class ManaSyncClient {
+
+    private ManaSyncClient() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Registers the sync receiver and the extrapolation clock. Payloads are handled on the client
+     * thread, so the state is updated in place without synchronization. The clock stops while the
+     * game is paused, as the integrated server does.
+     */
+    public static void register() {
+        ClientPlayNetworking.registerGlobalReceiver(ManaSyncPayload.ID,
+                (payload, context) -> ManaState.get().apply(payload));
+        ClientTickEvents.END_CLIENT_TICK.register(client -> {
+            if (!client.isPaused()) {
+                ManaState.get().tick();
+            }
+        });
+        ClientPlayConnectionEvents.DISCONNECT
+                .register((handler, client) -> ManaState.get().reset());
+    }
+}
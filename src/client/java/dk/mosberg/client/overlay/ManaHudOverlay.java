@@ -1,10 +1,11 @@
 package dk.mosberg.client.overlay;
 
 import dk.mosberg.Mana;
+import dk.mosberg.client.state.ManaState;
 import dk.mosberg.client.util.HealthBarHelper;
 import dk.mosberg.client.util.StatusIconHelper;
 import dk.mosberg.config.ManaConfig;
-import dk.mosberg.mana.ManaPool;
+import dk.mosberg.config.ManaConfigSnapshot;
 import net.fabricmc.fabric.api.client.rendering.v1.hud.HudElement;
 import net.fabricmc.fabric.api.client.rendering.v1.hud.HudElementRegistry;
 import net.minecraft.client.MinecraftClient;
@@ -14,7 +15,7 @@ import net.minecraft.entity.player.PlayerEntity;
 
 /**
  * Renders the three mana pools above the health bar. Thread-safe with immutable configuration
- * values.
+ * values. Layout and bar fill widths are cached, so a frame draws without allocating.
  */
 public class ManaHudOverlay {
     // Mana bar configuration (immutable)
@@ -42,6 +43,28 @@ public class ManaHudOverlay {
     private static final int SHINE_COLOR = 0x40FFFFFF;
     private static final double SHINE_WIDTH_FACTOR = 0.3;
 
+    // Layout derived from the overlay config and screen size, recomputed only when either changes
+    private static volatile boolean layoutDirty = true;
+    private static int layoutScreenWidth = -1;
+    private static int layoutScreenHeight = -1;
+    private static int manaX;
+    private static int manaY;
+    private static int healthX;
+    private static int healthY;
+    private static int statusX;
+    private static int statusY;
+    private static int scaledWidth;
+    private static int scaledHeight;
+    private static int scaledSpacing;
+    private static int scaledHealthWidth;
+    private static int scaledHealthHeight;
+    private static int scaledIconSize;
+    private static int scaledIconSpacing;
+    private static int healthColor;
+    private static int primaryColor;
+    private static int secondaryColor;
+    private static int tertiaryColor;
+
     /**
      * Main HUD rendering method called every frame.
      *
@@ -49,7 +72,9 @@ public class ManaHudOverlay {
      * @param tickCounter The render tick counter
      */
     public static void onHudRender(DrawContext drawContext, RenderTickCounter tickCounter) {
-        if (!ManaConfig.isOverlayEnabled()) {
+        // Read the configuration once so the whole frame uses one consistent version
+        ManaConfigSnapshot config = ManaConfig.snapshot();
+        if (!config.overlayEnabled()) {
             return;
         }
 
@@ -58,52 +83,81 @@ public class ManaHudOverlay {
             return;
         }
 
-        PlayerEntity player = client.player;
-        ManaPool manaPool = getManaPoolForClient(player);
-        if (manaPool == null) {
+        // Nothing to show until the server has sent this player's mana
+        ManaState mana = ManaState.get();
+        if (!mana.isSynced()) {
             return;
         }
 
+        PlayerEntity player = client.player;
+
         int screenWidth = drawContext.getScaledWindowWidth();
         int screenHeight = drawContext.getScaledWindowHeight();
-
-        // Get configurable values
-        double scale = ManaConfig.getOverlayScale();
-        int xOffset = ManaConfig.getOverlayXOffset();
-        int yOffset = ManaConfig.getOverlayYOffset();
-        double alpha = ManaConfig.getOverlayTransparency();
-
-        // Calculate positions (bottom center, scaled and offset)
-        int manaX = (int) (screenWidth / 2.0 - BAR_WIDTH * scale / 2.0) + xOffset;
-        int manaY = (int) (screenHeight - 49 - (BAR_HEIGHT + BAR_SPACING) * 3 * scale) + yOffset;
-        int healthX = (int) (screenWidth / 2.0 - HEALTH_BAR_WIDTH * scale / 2.0) + xOffset;
-        int healthY = (int) (manaY - HEALTH_BAR_OFFSET * scale);
-        int statusX = (int) (screenWidth / 2.0 - (STATUS_ICON_SIZE * 5 * scale) / 2.0) + xOffset;
-        int statusY = (int) (healthY - STATUS_ICON_OFFSET * scale);
-
-        // Convert alpha to integer (0-255)
-        int alphaInt = (int) (255 * Math.max(0.0, Math.min(1.0, alpha)));
+        if (layoutDirty || screenWidth != layoutScreenWidth
+                || screenHeight != layoutScreenHeight) {
+            updateLayout(config, screenWidth, screenHeight);
+        }
 
         // Draw status effect icons
-        StatusIconHelper.drawStatusIcons(drawContext, statusX, statusY, player,
-                (int) (STATUS_ICON_SIZE * scale), (int) (STATUS_ICON_SPACING * scale));
+        StatusIconHelper.drawStatusIcons(drawContext, statusX, statusY, player, scaledIconSize,
+                scaledIconSpacing);
 
         // Draw custom health bar
-        HealthBarHelper.drawHealthBar(drawContext, healthX, healthY,
-                (int) (HEALTH_BAR_WIDTH * scale), (int) (HEALTH_BAR_HEIGHT * scale), player,
-                applyAlpha(HEALTH_BAR_COLOR, alphaInt));
-
-        // Draw mana bars
-        int scaledWidth = (int) (BAR_WIDTH * scale);
-        int scaledHeight = (int) (BAR_HEIGHT * scale);
-        int scaledSpacing = (int) ((BAR_HEIGHT + BAR_SPACING) * scale);
+        HealthBarHelper.drawHealthBar(drawContext, healthX, healthY, scaledHealthWidth,
+                scaledHealthHeight, player, healthColor);
 
+        // Draw mana bars, extrapolating regeneration into the current tick
+        mana.updateFillWidths(scaledWidth, tickCounter.getTickProgress(false));
         drawManaBar(drawContext, manaX, manaY, scaledWidth, scaledHeight,
-                manaPool.getPrimaryPercent(), applyAlpha(PRIMARY_COLOR, alphaInt));
+                mana.getPrimaryFillWidth(), primaryColor);
         drawManaBar(drawContext, manaX, manaY + scaledSpacing, scaledWidth, scaledHeight,
-                manaPool.getSecondaryPercent(), applyAlpha(SECONDARY_COLOR, alphaInt));
+                mana.getSecondaryFillWidth(), secondaryColor);
         drawManaBar(drawContext, manaX, manaY + scaledSpacing * 2, scaledWidth, scaledHeight,
-                manaPool.getTertiaryPercent(), applyAlpha(TERTIARY_COLOR, alphaInt));
+                mana.getTertiaryFillWidth(), tertiaryColor);
+    }
+
+    /**
+     * Recomputes the cached layout from the overlay configuration and screen size.
+     *
+     * @param config The configuration snapshot
+     * @param screenWidth The scaled window width
+     * @param screenHeight The scaled window height
+     */
+    private static void updateLayout(ManaConfigSnapshot config, int screenWidth,
+            int screenHeight) {
+        // Clear first so a change published while recomputing marks the layout dirty again
+        layoutDirty = false;
+        layoutScreenWidth = screenWidth;
+        layoutScreenHeight = screenHeight;
+
+        // Get configurable values
+        double scale = config.overlayScale();
+        int xOffset = config.overlayXOffset();
+        int yOffset = config.overlayYOffset();
+        double alpha = config.overlayTransparency();
+
+        // Calculate positions (bottom center, scaled and offset)
+        manaX = (int) (screenWidth / 2.0 - BAR_WIDTH * scale / 2.0) + xOffset;
+        manaY = (int) (screenHeight - 49 - (BAR_HEIGHT + BAR_SPACING) * 3 * scale) + yOffset;
+        healthX = (int) (screenWidth / 2.0 - HEALTH_BAR_WIDTH * scale / 2.0) + xOffset;
+        healthY = (int) (manaY - HEALTH_BAR_OFFSET * scale);
+        statusX = (int) (screenWidth / 2.0 - (STATUS_ICON_SIZE * 5 * scale) / 2.0) + xOffset;
+        statusY = (int) (healthY - STATUS_ICON_OFFSET * scale);
+
+        scaledWidth = (int) (BAR_WIDTH * scale);
+        scaledHeight = (int) (BAR_HEIGHT * scale);
+        scaledSpacing = (int) ((BAR_HEIGHT + BAR_SPACING) * scale);
+        scaledHealthWidth = (int) (HEALTH_BAR_WIDTH * scale);
+        scaledHealthHeight = (int) (HEALTH_BAR_HEIGHT * scale);
+        scaledIconSize = (int) (STATUS_ICON_SIZE * scale);
+        scaledIconSpacing = (int) (STATUS_ICON_SPACING * scale);
+
+        // Convert alpha to integer (0-255)
+        int alphaInt = (int) (255 * Math.max(0.0, Math.min(1.0, alpha)));
+        healthColor = applyAlpha(HEALTH_BAR_COLOR, alphaInt);
+        primaryColor = applyAlpha(PRIMARY_COLOR, alphaInt);
+        secondaryColor = applyAlpha(SECONDARY_COLOR, alphaInt);
+        tertiaryColor = applyAlpha(TERTIARY_COLOR, alphaInt);
     }
 
     /**
@@ -114,11 +168,11 @@ public class ManaHudOverlay {
      * @param y The y position
      * @param width The bar width
      * @param height The bar height
-     * @param percent The fill percentage (0.0-1.0)
+     * @param fillWidth The filled width in pixels
      * @param color The fill color (ARGB)
      */
     private static void drawManaBar(DrawContext context, int x, int y, int width, int height,
-            double percent, int color) {
+            int fillWidth, int color) {
         // Draw background
         context.fill(x, y, x + width, y + height, BACKGROUND_COLOR);
 
@@ -129,7 +183,6 @@ public class ManaHudOverlay {
         context.fill(x + width - 1, y, x + width, y + height, BORDER_COLOR); // Right
 
         // Draw filled portion
-        int fillWidth = (int) (width * Math.max(0.0, Math.min(1.0, percent)));
         if (fillWidth > 1) {
             context.fill(x + 1, y + 1, x + fillWidth - 1, y + height - 1, color);
 
@@ -151,20 +204,11 @@ public class ManaHudOverlay {
     }
 
     /**
-     * Gets the mana pool for the client player. Note: This is a client-side approximation. Actual
-     * data should sync from server.
-     *
-     * @param player The player
-     * @return The mana pool or null
-     */
-    private static ManaPool getManaPoolForClient(PlayerEntity player) {
-        return new ManaPool();
-    }
-
-    /**
-     * Registers the HUD overlay with Fabric.
+     * Registers the HUD overlay with Fabric and invalidates its layout whenever an overlay setting
+     * changes.
      */
     public static void register() {
+        ManaConfig.subscribe("overlay.*", change -> layoutDirty = true);
         HudElementRegistry.addLast(Mana.id("mana_hud_overlay"),
                 (HudElement) ManaHudOverlay::onHudRender);
     }
@@ -0,0 +1,203 @@
+package dk.mosberg.client.state;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.mana.ManaPool;
+import dk.mosberg.network.ManaSyncPayload;
+
+/**
+ * The client player's mana. There is one instance, updated in place by the sync receiver and read
+ * by the HUD; both run on the client thread.
+ *
+ * <p>
+ * The server only sends values when they stop following regeneration, so each current value is a
+ * baseline stamped with the client tick it arrived on, and regeneration is extrapolated from it
+ * with the same closed form the server uses. Tick progress makes the bars move every frame.
+ *
+ * <p>
+ * Everything is primitive and preallocated, so reading the state allocates nothing. The HUD's bar
+ * fill widths are cached here too and only recomputed when a payload arrives, the bar width
+ * changes, or a pool is still visibly refilling.
+ */
+public final class ManaState {
+
+    private static final ManaState INSTANCE = new ManaState();
+
+    private static final int POOLS = 3;
+    private static final double[] REGEN_RATES = {ManaPool.REGEN_RATE_PRIMARY,
+            ManaPool.REGEN_RATE_SECONDARY, ManaPool.REGEN_RATE_TERTIARY};
+
+    private final double[] values = new double[ManaSyncPayload.FIELDS];
+    private final long[] baseTick = new long[POOLS];
+    private long clientTick;
+    private boolean regenerating;
+    private boolean synced;
+
+    // Cached bar fill widths; filling means extrapolation may still move them
+    private final int[] fillWidths = new int[POOLS];
+    private int fillBarWidth = -1;
+    private boolean fillsValid;
+    private boolean filling;
+
+    private ManaState() {
+    }
+
+    /**
+     * Gets the client player's mana state.
+     *
+     * @return The state
+     */
+    @NotNull
+    public static ManaState get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Applies a sync payload. Fields absent from it keep their value; updates received before the
+     * first full sync are ignored, since there is nothing to apply them to.
+     *
+     * @param payload The payload
+     */
+    public void apply(@NotNull ManaSyncPayload payload) {
+        if (!synced && !payload.has(ManaSyncPayload.FULL)) {
+            return;
+        }
+
+        for (int field = 0; field < ManaSyncPayload.FIELDS; field++) {
+            if (payload.has(1 << field)) {
+                values[field] = payload.value(field);
+                if (field < POOLS) {
+                    baseTick[field] = clientTick;
+                }
+            }
+        }
+        if (payload.has(ManaSyncPayload.REGENERATING)) {
+            regenerating = payload.regenerating();
+        }
+        synced = true;
+        fillsValid = false;
+    }
+
+    /**
+     * Brings the cached fill widths up to date for a bar width. Does nothing unless a payload
+     * arrived, the width changed, or a pool is still refilling since the last update.
+     *
+     * @param barWidth The scaled bar width in pixels
+     * @param tickProgress Progress into the current client tick (0.0-1.0)
+     */
+    public void updateFillWidths(int barWidth, float tickProgress) {
+        if (fillsValid && !filling && barWidth == fillBarWidth) {
+            return;
+        }
+
+        filling = false;
+        for (int pool = 0; pool < POOLS; pool++) {
+            double max = values[pool + POOLS];
+            double mana = mana(pool, tickProgress);
+            double percent = max > 0 ? Math.max(0.0, Math.min(1.0, mana / max)) : 0.0;
+            fillWidths[pool] = (int) (barWidth * percent);
+            filling |= regenerating && mana < max;
+        }
+        fillBarWidth = barWidth;
+        fillsValid = true;
+    }
+
+    public int getPrimaryFillWidth() {
+        return fillWidths[ManaSyncPayload.PRIMARY];
+    }
+
+    public int getSecondaryFillWidth() {
+        return fillWidths[ManaSyncPayload.SECONDARY];
+    }
+
+    public int getTertiaryFillWidth() {
+        return fillWidths[ManaSyncPayload.TERTIARY];
+    }
+
+    /**
+     * Advances the extrapolation clock by one client tick.
+     */
+    public void tick() {
+        clientTick++;
+    }
+
+    /**
+     * Forgets the synced state, on disconnect.
+     */
+    public void reset() {
+        Arrays.fill(values, 0.0);
+        regenerating = false;
+        synced = false;
+        fillsValid = false;
+    }
+
+    /**
+     * Checks whether the server has sent the state yet.
+     *
+     * @return true once a full sync arrived
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public double getPrimaryMana(float tickProgress) {
+        return mana(ManaSyncPayload.PRIMARY, tickProgress);
+    }
+
+    public double getSecondaryMana(float tickProgress) {
+        return mana(ManaSyncPayload.SECONDARY, tickProgress);
+    }
+
+    public double getTertiaryMana(float tickProgress) {
+        return mana(ManaSyncPayload.TERTIARY, tickProgress);
+    }
+
+    public double getPrimaryMax() {
+        return values[ManaSyncPayload.PRIMARY_MAX];
+    }
+
+    public double getSecondaryMax() {
+        return values[ManaSyncPayload.SECONDARY_MAX];
+    }
+
+    public double getTertiaryMax() {
+        return values[ManaSyncPayload.TERTIARY_MAX];
+    }
+
+    public double getPrimaryPercent(float tickProgress) {
+        return percent(ManaSyncPayload.PRIMARY, tickProgress);
+    }
+
+    public double getSecondaryPercent(float tickProgress) {
+        return percent(ManaSyncPayload.SECONDARY, tickProgress);
+    }
+
+    public double getTertiaryPercent(float tickProgress) {
+        return percent(ManaSyncPayload.TERTIARY, tickProgress);
+    }
+
+    public boolean isRegenerating() {
+        return regenerating;
+    }
+
+    /**
+     * Extrapolates a pool's mana from its baseline.
+     *
+     * @param pool The pool index
+     * @param tickProgress Progress into the current client tick (0.0-1.0)
+     * @return The extrapolated mana
+     */
+    private double mana(int pool, float tickProgress) {
+        double base = values[pool];
+        if (!regenerating) {
+            return base;
+        }
+        return ManaPool.regenerate(base, values[pool + POOLS], REGEN_RATES[pool],
+                clientTick - baseTick[pool] + tickProgress);
+    }
+
+    private double percent(int pool, float tickProgress) {
+        double max = values[pool + POOLS];
+        return max > 0 ? mana(pool, tickProgress) / max : 0.0;
+    }
+}
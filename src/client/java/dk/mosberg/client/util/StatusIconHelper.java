@@ -1,8 +1,6 @@
 // StatusIconHelper.java - Already correct, no changes needed
 package dk.mosberg.client.util;
 
-import java.util.List;
-import java.util.stream.Collectors;
 import net.minecraft.client.gl.RenderPipelines;
 import net.minecraft.client.gui.DrawContext;
 import net.minecraft.client.gui.hud.InGameHud;
@@ -17,6 +15,9 @@ import net.minecraft.util.Identifier;
  */
 public class StatusIconHelper {
 
+    // Fallback icon, created on first use because items are not registered at class load
+    private static ItemStack fallbackIcon;
+
     public static void initialize() {
         // Initialize any rendering resources if needed
     }
@@ -33,15 +34,13 @@ public class StatusIconHelper {
      */
     public static void drawStatusIcons(DrawContext context, int x, int y, PlayerEntity player,
             int iconSize, int spacing) {
-        List<StatusEffectInstance> effects = player.getStatusEffects().stream()
-                .filter(StatusEffectInstance::shouldShowIcon).collect(Collectors.toList());
-
-        if (effects.isEmpty()) {
-            return;
-        }
-
+        // Iterate directly rather than collecting into a list, so frames do not allocate
         int index = 0;
-        for (StatusEffectInstance effect : effects) {
+        for (StatusEffectInstance effect : player.getStatusEffects()) {
+            if (!effect.shouldShowIcon()) {
+                continue;
+            }
+
             // Get the icon texture for the status effect
             Identifier icon = InGameHud.getEffectTexture(effect.getEffectType());
 
@@ -52,8 +51,10 @@ public class StatusIconHelper {
                         iconSize, iconSize);
             } else {
                 // Fallback: draw a potion bottle
-                ItemStack stack = new ItemStack(Items.POTION);
-                context.drawItem(stack, x + index * (iconSize + spacing), y);
+                if (fallbackIcon == null) {
+                    fallbackIcon = new ItemStack(Items.POTION);
+                }
+                context.drawItem(fallbackIcon, x + index * (iconSize + spacing), y);
             }
 
             index++;
@@ -0,0 +1,72 @@
+package dk.mosberg.mana;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Benchmarks {@link ManaComponents#getIfExists(UUID)} lookups of existing components from several
+ * threads at once, matching async callers racing the server thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManaComponentsBenchmark {
+
+    @Param({"300", "5000"})
+    public int players;
+
+    UUID[] playerIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        playerIds = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            playerIds[i] = UUID.randomUUID();
+            ManaComponents.getOrCreate(playerIds[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ManaComponents.clear();
+    }
+
+    /**
+     * Per-thread cursor so threads walk the key space independently.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ManaComponent getUncontended(Cursor cursor) {
+        return lookup(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ManaComponent getContended(Cursor cursor) {
+        return lookup(cursor);
+    }
+
+    private ManaComponent lookup(Cursor cursor) {
+        int index = cursor.next++;
+        if (cursor.next == playerIds.length) {
+            cursor.next = 0;
+        }
+        return ManaComponents.getIfExists(playerIds[index]);
+    }
+}
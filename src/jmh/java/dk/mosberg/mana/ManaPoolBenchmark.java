@@ -0,0 +1,113 @@
+package dk.mosberg.mana;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import net.minecraft.nbt.NbtCompound;
+
+/**
+ * Benchmarks for the per-call {@link ManaPool} operations used on the server thread. Each
+ * benchmark keeps the pool in a steady state so the measured path does not degrade into an
+ * early-return as pools fill or drain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManaPoolBenchmark {
+
+    private static final int REFILL_INTERVAL = 1000;
+
+    private ManaPool pool;
+    private ManaPool other;
+    // Too large to refill during a run, so every read derives pending regeneration
+    private ManaPool regenerating;
+    private NbtCompound nbt;
+    private int counter;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        pool = new ManaPool();
+        other = new ManaPool();
+        other.consumeMana(other.getTotalMaxMana() / 2);
+        regenerating = new ManaPool(1.0e12, 1.0e12, 1.0e12);
+        regenerating.consumeMana(regenerating.getTotalMaxMana() - 1.0);
+        nbt = pool.writeNbt(new NbtCompound());
+        counter = 0;
+    }
+
+    @Benchmark
+    public boolean consumeMana() {
+        if (++counter == REFILL_INTERVAL) {
+            counter = 0;
+            pool.restoreAll();
+        }
+        return pool.consumeMana(1.0);
+    }
+
+    @Benchmark
+    public void restoreMana() {
+        if (++counter == REFILL_INTERVAL) {
+            counter = 0;
+            pool.consumeMana(REFILL_INTERVAL);
+        }
+        pool.restoreMana(1.0);
+    }
+
+    @Benchmark
+    public boolean shareMana() {
+        // Round trip so both pools stay in steady state
+        return pool.shareMana(other, 1.0) & other.shareMana(pool, 1.0);
+    }
+
+    @Benchmark
+    public double getPercentWithPendingRegen() {
+        ManaClock.advance();
+        return regenerating.getPrimaryPercent() + regenerating.getSecondaryPercent()
+                + regenerating.getTertiaryPercent();
+    }
+
+    @Benchmark
+    public NbtCompound writeNbt() {
+        return pool.writeNbt(new NbtCompound());
+    }
+
+    @Benchmark
+    public void readNbt() {
+        pool.readNbt(nbt);
+    }
+
+    /**
+     * Eager regeneration over a store of depleted pools. Pool values are large enough that no
+     * slot fills up during a measurement iteration, so every tick visits every slot.
+     */
+    @State(Scope.Thread)
+    public static class StoreState {
+
+        @Param({"100", "1000"})
+        public int players;
+
+        ManaPoolStore store;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            store = new ManaPoolStore(players);
+            for (int i = 0; i < players; i++) {
+                ManaPool pool = new ManaPool(store, 1.0e12, 1.0e12, 1.0e12);
+                pool.consumeMana(pool.getTotalMaxMana() - 1.0);
+            }
+        }
+    }
+
+    @Benchmark
+    public void tick(StoreState state) {
+        ManaClock.advance();
+        state.store.tick();
+    }
+}
@@ -0,0 +1,98 @@
+package dk.mosberg.mana;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+
+/**
+ * Compares the compact {@link ManaPoolCodec} layout against the legacy keyed layout: encoding a
+ * pool into a compound, decoding it back, and serializing the compound to bytes as a player data
+ * save does. The serialize benchmarks also report the serialized size of their layout as the
+ * {@code serializedBytes} secondary result.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManaPoolCodecBenchmark {
+
+    private ManaPool pool;
+    private NbtCompound legacy;
+    private NbtCompound compact;
+    private ByteArrayOutputStream bytes;
+    private DataOutputStream output;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        // Partially drained pool so mana values carry fractions like a live player's
+        pool = new ManaPool();
+        pool.consumeMana(123.456);
+        legacy = ManaPoolCodec.writeLegacy(pool, new NbtCompound());
+        compact = ManaPoolCodec.write(pool, new NbtCompound());
+        bytes = new ByteArrayOutputStream(256);
+        output = new DataOutputStream(bytes);
+    }
+
+    @Benchmark
+    public NbtCompound encodeLegacy() {
+        return ManaPoolCodec.writeLegacy(pool, new NbtCompound());
+    }
+
+    @Benchmark
+    public NbtCompound encodeCompact() {
+        return ManaPoolCodec.write(pool, new NbtCompound());
+    }
+
+    @Benchmark
+    public void decodeLegacy() {
+        ManaPoolCodec.readLegacy(pool, legacy);
+    }
+
+    @Benchmark
+    public void decodeCompact() {
+        ManaPoolCodec.read(pool, compact);
+    }
+
+    /**
+     * Size of the last serialized compound, reported next to the serialize benchmarks' throughput.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class SerializedSize {
+
+        public long serializedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            serializedBytes = 0;
+        }
+    }
+
+    @Benchmark
+    public void serializeLegacy(SerializedSize size) throws IOException {
+        size.serializedBytes = serialize(legacy);
+    }
+
+    @Benchmark
+    public void serializeCompact(SerializedSize size) throws IOException {
+        size.serializedBytes = serialize(compact);
+    }
+
+    private int serialize(NbtCompound nbt) throws IOException {
+        bytes.reset();
+        NbtIo.write(nbt, output);
+        output.flush();
+        return bytes.size();
+    }
+}
@@ -0,0 +1,35 @@
+package dk.mosberg.util;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import dk.mosberg.mana.ManaPool;
+import dk.mosberg.mana.ManaPool.ManaPoolType;
+
+/**
+ * Benchmarks {@link ManaPoolHelper#formatMana(ManaPool, ManaPoolType)}, which runs for every
+ * mana display string.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManaPoolHelperBenchmark {
+
+    private ManaPool pool;
+
+    @Setup
+    public void setUp() {
+        pool = new ManaPool();
+        pool.consumeMana(123.4);
+    }
+
+    @Benchmark
+    public String formatMana() {
+        return ManaPoolHelper.formatMana(pool, ManaPoolType.PRIMARY);
+    }
+}
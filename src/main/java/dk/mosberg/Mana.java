@@ -1,14 +1,26 @@
 package dk.mosberg;
 
+import java.io.IOException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import dk.mosberg.config.ManaConfig;
+import dk.mosberg.config.ManaConfigWatcher;
+import dk.mosberg.mana.ManaAttachments;
+import dk.mosberg.mana.ManaClock;
 import dk.mosberg.mana.ManaComponent;
+import dk.mosberg.mana.ManaComponents;
+import dk.mosberg.mana.ManaTimers;
+import dk.mosberg.mana.ManaWriteBehind;
+import dk.mosberg.network.ManaSync;
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.WorldSavePath;
 
 /**
  * Main mod class for the Mana System. Handles server-side initialization and player mana
@@ -24,18 +36,61 @@ public class Mana implements ModInitializer {
 	public void onInitialize() {
 		instance = this;
 
-		// Initialize configuration
+		// Initialize configuration and hot-reload it when mana.json changes
 		ManaConfig.initialize();
+		ManaConfigWatcher.start();
 
-		// Register server tick event for mana regeneration
-		ServerTickEvents.END_SERVER_TICK.register(server -> {
-			for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-				ManaComponent component = ManaComponent.get(player);
-				if (component != null) {
-					component.tick();
+		// Persist player mana with the player data or the write-behind store
+		ManaAttachments.register();
+		ServerLifecycleEvents.SERVER_STARTED.register(server -> {
+			if (ManaConfig.isWriteBehindEnabled()) {
+				try {
+					ManaWriteBehind.start(
+							server.getSavePath(WorldSavePath.ROOT).resolve("data").resolve(MOD_ID));
+				} catch (IOException e) {
+					LOGGER.error("Failed to open mana write-behind store, using player data", e);
 				}
 			}
 		});
+		// Player data is written before a save completes; only then are attached pools clean
+		ServerLifecycleEvents.AFTER_SAVE
+				.register((server, flush, force) -> ManaAttachments.confirmSaved(server));
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> {
+			ManaTimers.clear();
+			ManaComponents.clear();
+			ManaSync.clear();
+		});
+
+		// Restore mana on join and evict it a grace period after leaving. Each player is sent
+		// their mana in full on join and respawn, then only what changed.
+		ManaSync.register();
+		ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
+			ManaComponents.onJoin(handler.getPlayer());
+			ManaSync.resync(handler.getPlayer());
+		});
+		ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
+			ManaComponents.onDisconnect(handler.getPlayer());
+			ManaSync.forget(handler.getPlayer());
+		});
+		ServerPlayerEvents.AFTER_RESPAWN.register((oldPlayer, newPlayer, alive) -> {
+			ManaComponents.onRespawn(newPlayer);
+			ManaSync.resync(newPlayer);
+		});
+
+		// Register server tick event for mana regeneration. Pools derive regeneration from the
+		// clock, so per-player ticking is only needed when lazy regeneration is disabled, and then
+		// only for players whose pools are actually regenerating. Timed modifiers and cooldowns
+		// expire before sync, so their changes go out on the tick they happen.
+		ServerTickEvents.END_SERVER_TICK.register(server -> {
+			ManaClock.advance();
+			ManaTimers.tick();
+			if (!ManaConfig.isLazyRegenEnabled()) {
+				ManaComponents.tickActive();
+			}
+			ManaComponents.evictDeparted();
+			ManaWriteBehind.tick();
+			ManaSync.tick(server);
+		});
 
 		LOGGER.info("Mana System initialized!");
 	}
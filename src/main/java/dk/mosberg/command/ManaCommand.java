@@ -1,7 +1,12 @@
 package dk.mosberg.command;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import org.jetbrains.annotations.NotNull;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.DoubleArgumentType;
@@ -10,12 +15,18 @@ import com.mojang.brigadier.context.CommandContext;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import dk.mosberg.config.ManaConfig;
+import dk.mosberg.config.ManaConfigSnapshot;
 import dk.mosberg.mana.ManaComponent;
 import dk.mosberg.mana.ManaComponents;
 import dk.mosberg.mana.ManaPool;
 import dk.mosberg.mana.ManaPool.ManaPoolType;
+import dk.mosberg.mana.ManaPoolStore;
+import dk.mosberg.mana.ManaTimers;
+import dk.mosberg.mana.ManaWriteBehind;
+import dk.mosberg.network.ManaSync;
 import net.minecraft.command.CommandRegistryAccess;
 import net.minecraft.command.argument.EntityArgumentType;
+import net.minecraft.command.argument.UuidArgumentType;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
@@ -30,12 +41,13 @@ import net.minecraft.util.Formatting;
  * Command structure:
  * <ul>
  * <li>/mana get [player] [pool] - Get mana information
- * <li>/mana set &lt;player&gt; &lt;pool&gt; &lt;amount&gt; - Set mana value
- * <li>/mana add &lt;player&gt; &lt;pool&gt; &lt;amount&gt; - Add mana
- * <li>/mana remove &lt;player&gt; &lt;pool&gt; &lt;amount&gt; - Remove mana
- * <li>/mana restore &lt;player&gt; [pool] - Restore mana to maximum
- * <li>/mana setmax &lt;player&gt; &lt;pool&gt; &lt;amount&gt; - Set maximum mana
- * <li>/mana regen &lt;player&gt; &lt;enable|disable&gt; - Control regeneration
+ * <li>/mana set &lt;players&gt; &lt;pool&gt; &lt;amount&gt; - Set mana value
+ * <li>/mana add &lt;players&gt; &lt;pool&gt; &lt;amount&gt; - Add mana
+ * <li>/mana remove &lt;players&gt; &lt;pool&gt; &lt;amount&gt; - Remove mana
+ * <li>/mana restore &lt;players&gt; [pool] - Restore mana to maximum
+ * <li>/mana setmax &lt;players&gt; &lt;pool&gt; &lt;amount&gt; - Set maximum mana
+ * <li>/mana regen &lt;players&gt; &lt;enable|disable&gt; - Control regeneration
+ * <li>/mana offline &lt;get|set&gt; &lt;uuid&gt; ... - Inspect or edit a player who is offline
  * <li>/mana config &lt;get|set|reload|save&gt; - Configuration management
  * <li>/mana debug - Debug information
  * </ul>
@@ -75,9 +87,9 @@ public class ManaCommand {
                                                                                 .suggests(POOL_SUGGESTIONS)
                                                                                 .executes(ManaCommand::getPlayerPoolMana))))
 
-                                // /mana set <player> <pool> <amount>
+                                // /mana set <players> <pool> <amount>
                                 .then(CommandManager.literal("set").then(CommandManager
-                                                .argument("player", EntityArgumentType.player())
+                                                .argument("player", EntityArgumentType.players())
                                                 .then(CommandManager
                                                                 .argument("pool", StringArgumentType
                                                                                 .word())
@@ -88,9 +100,9 @@ public class ManaCommand {
                                                                                                 .doubleArg(0))
                                                                                 .executes(ManaCommand::setMana)))))
 
-                                // /mana add <player> <pool> <amount>
+                                // /mana add <players> <pool> <amount>
                                 .then(CommandManager.literal("add").then(CommandManager
-                                                .argument("player", EntityArgumentType.player())
+                                                .argument("player", EntityArgumentType.players())
                                                 .then(CommandManager
                                                                 .argument("pool", StringArgumentType
                                                                                 .word())
@@ -101,9 +113,9 @@ public class ManaCommand {
                                                                                                 .doubleArg(0))
                                                                                 .executes(ManaCommand::addMana)))))
 
-                                // /mana remove <player> <pool> <amount>
+                                // /mana remove <players> <pool> <amount>
                                 .then(CommandManager.literal("remove").then(CommandManager
-                                                .argument("player", EntityArgumentType.player())
+                                                .argument("player", EntityArgumentType.players())
                                                 .then(CommandManager
                                                                 .argument("pool", StringArgumentType
                                                                                 .word())
@@ -114,9 +126,9 @@ public class ManaCommand {
                                                                                                 .doubleArg(0))
                                                                                 .executes(ManaCommand::removeMana)))))
 
-                                // /mana restore <player> [pool]
+                                // /mana restore <players> [pool]
                                 .then(CommandManager.literal("restore").then(CommandManager
-                                                .argument("player", EntityArgumentType.player())
+                                                .argument("player", EntityArgumentType.players())
                                                 .executes(ManaCommand::restoreAllMana)
                                                 .then(CommandManager
                                                                 .argument("pool", StringArgumentType
@@ -124,9 +136,9 @@ public class ManaCommand {
                                                                 .suggests(POOL_SUGGESTIONS)
                                                                 .executes(ManaCommand::restorePoolMana))))
 
-                                // /mana setmax <player> <pool> <amount>
+                                // /mana setmax <players> <pool> <amount>
                                 .then(CommandManager.literal("setmax").then(CommandManager
-                                                .argument("player", EntityArgumentType.player())
+                                                .argument("player", EntityArgumentType.players())
                                                 .then(CommandManager
                                                                 .argument("pool", StringArgumentType
                                                                                 .word())
@@ -137,15 +149,32 @@ public class ManaCommand {
                                                                                                 .doubleArg(0))
                                                                                 .executes(ManaCommand::setMaxMana)))))
 
-                                // /mana regen <player> <enable|disable>
+                                // /mana regen <players> <enable|disable>
                                 .then(CommandManager.literal("regen").then(CommandManager
-                                                .argument("player", EntityArgumentType.player())
+                                                .argument("player", EntityArgumentType.players())
                                                 .then(CommandManager.literal("enable").executes(
                                                                 ctx -> setRegeneration(ctx, true)))
                                                 .then(CommandManager.literal("disable")
                                                                 .executes(ctx -> setRegeneration(
                                                                                 ctx, false)))))
 
+                                // /mana offline <get|set> <uuid> ...
+                                .then(CommandManager.literal("offline")
+                                                .then(CommandManager.literal("get").then(CommandManager
+                                                                .argument("uuid", UuidArgumentType.uuid())
+                                                                .executes(ManaCommand::getOfflineMana)))
+                                                .then(CommandManager.literal("set").then(CommandManager
+                                                                .argument("uuid", UuidArgumentType.uuid())
+                                                                .then(CommandManager
+                                                                                .argument("pool", StringArgumentType
+                                                                                                .word())
+                                                                                .suggests(POOL_SUGGESTIONS)
+                                                                                .then(CommandManager.argument(
+                                                                                                "amount",
+                                                                                                DoubleArgumentType
+                                                                                                                .doubleArg(0))
+                                                                                                .executes(ManaCommand::setOfflineMana))))))
+
                                 // /mana config <get|set|reload|save>
                                 .then(CommandManager.literal("config")
                                                 .then(CommandManager.literal("reload").executes(
@@ -232,10 +261,16 @@ public class ManaCommand {
                         return 0;
                 }
 
-                ManaPool pool = component.getManaPool();
+                return displayPoolMana(ctx, player.getName().getString(),
+                                component.getManaPool());
+        }
 
-                ctx.getSource().sendFeedback(() -> Text
-                                .literal("=== " + player.getName().getString() + "'s Mana ===")
+        /**
+         * Displays comprehensive mana information for a pool.
+         */
+        private static int displayPoolMana(@NotNull CommandContext<ServerCommandSource> ctx,
+                        @NotNull String name, @NotNull ManaPool pool) {
+                ctx.getSource().sendFeedback(() -> Text.literal("=== " + name + "'s Mana ===")
                                 .formatted(Formatting.GOLD), false);
 
                 ctx.getSource().sendFeedback(() -> Text
@@ -271,326 +306,489 @@ public class ManaCommand {
         }
 
         // ==================== MODIFICATION COMMANDS ====================
+        // Each applies to every player the selector matches in one pass and reports once.
 
         /**
-         * Sets a player's mana for a specific pool.
+         * Sets the players' mana for a specific pool, or every pool.
          */
         private static int setMana(@NotNull CommandContext<ServerCommandSource> ctx)
                         throws CommandSyntaxException {
-                ServerPlayerEntity player = EntityArgumentType.getPlayer(ctx, "player");
+                Collection<ServerPlayerEntity> players =
+                                EntityArgumentType.getPlayers(ctx, "player");
                 String poolName = StringArgumentType.getString(ctx, "pool");
                 double amount = DoubleArgumentType.getDouble(ctx, "amount");
 
-                ManaComponent component = ManaComponent.get(player);
-                if (component == null) {
-                        ctx.getSource().sendError(
-                                        Text.translatable("mana.command.error.no_component"));
-                        return 0;
-                }
-
-                ManaPool pool = component.getManaPool();
-                ManaPoolType type = parsePoolType(poolName);
-
-                if (type == null) {
+                int pools = parsePoolMask(poolName);
+                if (pools == 0) {
                         ctx.getSource().sendError(
                                         Text.translatable("mana.command.error.invalid_pool"));
                         return 0;
                 }
 
-                setPoolValue(pool, type, amount);
+                int changed = forEachPool(players, pool -> pool.setMana(pools, amount));
+                if (changed == 0) {
+                        return noComponent(ctx);
+                }
 
                 ctx.getSource().sendFeedback(() -> Text
-                                .translatable("mana.command.set.success",
-                                                player.getName().getString(), poolName,
+                                .translatable(feedbackKey("mana.command.set.success", players),
+                                                targets(players), poolName,
                                                 String.format("%.1f", amount))
                                 .formatted(Formatting.GREEN), true);
 
-                return 1;
+                return changed;
         }
 
         /**
-         * Adds mana to a player's pool.
+         * Adds mana to the players' pool. "all" fills pools in priority order.
          */
         private static int addMana(@NotNull CommandContext<ServerCommandSource> ctx)
                         throws CommandSyntaxException {
-                ServerPlayerEntity player = EntityArgumentType.getPlayer(ctx, "player");
+                Collection<ServerPlayerEntity> players =
+                                EntityArgumentType.getPlayers(ctx, "player");
                 String poolName = StringArgumentType.getString(ctx, "pool");
                 double amount = DoubleArgumentType.getDouble(ctx, "amount");
 
-                ManaComponent component = ManaComponent.get(player);
-                if (component == null) {
+                ManaPoolType type = parsePoolType(poolName);
+                if (type == null && !"all".equals(poolName)) {
                         ctx.getSource().sendError(
-                                        Text.translatable("mana.command.error.no_component"));
+                                        Text.translatable("mana.command.error.invalid_pool"));
                         return 0;
                 }
 
-                ManaPool pool = component.getManaPool();
-
-                if ("all".equals(poolName)) {
-                        pool.restoreMana(amount);
-                } else {
-                        ManaPoolType type = parsePoolType(poolName);
-                        if (type == null) {
-                                ctx.getSource().sendError(Text
-                                                .translatable("mana.command.error.invalid_pool"));
-                                return 0;
-                        }
-
-                        double current = getPoolValue(pool, type);
-                        setPoolValue(pool, type,
-                                        Math.min(current + amount, getPoolMax(pool, type)));
+                int changed = forEachPool(players, type == null ? pool -> pool.restoreMana(amount)
+                                : pool -> pool.addMana(type, amount));
+                if (changed == 0) {
+                        return noComponent(ctx);
                 }
 
                 ctx.getSource().sendFeedback(() -> Text
-                                .translatable("mana.command.add.success",
-                                                String.format("%.1f", amount),
-                                                player.getName().getString(), poolName)
+                                .translatable(feedbackKey("mana.command.add.success", players),
+                                                String.format("%.1f", amount), targets(players),
+                                                poolName)
                                 .formatted(Formatting.GREEN), true);
 
-                return 1;
+                return changed;
         }
 
         /**
-         * Removes mana from a player's pool.
+         * Removes mana from the players' pool. "all" drains pools in priority order and only
+         * charges players who have the full amount; the others keep their mana and are reported.
          */
         private static int removeMana(@NotNull CommandContext<ServerCommandSource> ctx)
                         throws CommandSyntaxException {
-                ServerPlayerEntity player = EntityArgumentType.getPlayer(ctx, "player");
+                Collection<ServerPlayerEntity> players =
+                                EntityArgumentType.getPlayers(ctx, "player");
                 String poolName = StringArgumentType.getString(ctx, "pool");
                 double amount = DoubleArgumentType.getDouble(ctx, "amount");
 
-                ManaComponent component = ManaComponent.get(player);
-                if (component == null) {
+                ManaPoolType type = parsePoolType(poolName);
+                if (type == null && !"all".equals(poolName)) {
                         ctx.getSource().sendError(
-                                        Text.translatable("mana.command.error.no_component"));
+                                        Text.translatable("mana.command.error.invalid_pool"));
                         return 0;
                 }
 
-                ManaPool pool = component.getManaPool();
-
-                if ("all".equals(poolName)) {
-                        pool.consumeMana(amount);
-                } else {
-                        ManaPoolType type = parsePoolType(poolName);
-                        if (type == null) {
-                                ctx.getSource().sendError(Text
-                                                .translatable("mana.command.error.invalid_pool"));
-                                return 0;
-                        }
-
-                        double current = getPoolValue(pool, type);
-                        setPoolValue(pool, type, Math.max(0, current - amount));
+                List<ServerPlayerEntity> failed = new ArrayList<>();
+                List<ServerPlayerEntity> changed = forEachPool(players,
+                                type == null ? pool -> pool.consumeMana(amount) : pool -> {
+                                        pool.addMana(type, -amount);
+                                        return true;
+                                }, failed);
+                if (!failed.isEmpty()) {
+                        ctx.getSource().sendError(Text.translatable(
+                                        feedbackKey("mana.command.error.insufficient_mana", failed),
+                                        targets(failed), String.format("%.1f", amount)));
+                }
+                if (changed.isEmpty()) {
+                        return failed.isEmpty() ? noComponent(ctx) : 0;
                 }
 
                 ctx.getSource().sendFeedback(() -> Text
-                                .translatable("mana.command.remove.success",
-                                                String.format("%.1f", amount),
-                                                player.getName().getString(), poolName)
+                                .translatable(feedbackKey("mana.command.remove.success", changed),
+                                                String.format("%.1f", amount), targets(changed),
+                                                poolName)
                                 .formatted(Formatting.GREEN), true);
 
-                return 1;
+                return changed.size();
         }
 
         /**
-         * Restores all mana pools to maximum.
+         * Restores all of the players' mana pools to maximum.
          */
         private static int restoreAllMana(@NotNull CommandContext<ServerCommandSource> ctx)
                         throws CommandSyntaxException {
-                ServerPlayerEntity player = EntityArgumentType.getPlayer(ctx, "player");
+                Collection<ServerPlayerEntity> players =
+                                EntityArgumentType.getPlayers(ctx, "player");
 
-                ManaComponent component = ManaComponent.get(player);
-                if (component == null) {
-                        ctx.getSource().sendError(
-                                        Text.translatable("mana.command.error.no_component"));
-                        return 0;
+                int changed = forEachPool(players, ManaPool::restoreAll);
+                if (changed == 0) {
+                        return noComponent(ctx);
                 }
 
-                component.getManaPool().restoreAll();
-
                 ctx.getSource().sendFeedback(() -> Text
-                                .translatable("mana.command.restore.all.success",
-                                                player.getName().getString())
+                                .translatable(feedbackKey("mana.command.restore.all.success",
+                                                players), targets(players))
                                 .formatted(Formatting.GREEN), true);
 
-                return 1;
+                return changed;
         }
 
         /**
-         * Restores a specific pool to maximum.
+         * Restores a specific pool of the players to maximum.
          */
         private static int restorePoolMana(@NotNull CommandContext<ServerCommandSource> ctx)
                         throws CommandSyntaxException {
-                ServerPlayerEntity player = EntityArgumentType.getPlayer(ctx, "player");
+                Collection<ServerPlayerEntity> players =
+                                EntityArgumentType.getPlayers(ctx, "player");
                 String poolName = StringArgumentType.getString(ctx, "pool");
 
-                ManaComponent component = ManaComponent.get(player);
-                if (component == null) {
+                ManaPoolType type = parsePoolType(poolName);
+                if (type == null && !"all".equals(poolName)) {
                         ctx.getSource().sendError(
-                                        Text.translatable("mana.command.error.no_component"));
+                                        Text.translatable("mana.command.error.invalid_pool"));
                         return 0;
                 }
 
-                ManaPool pool = component.getManaPool();
-
-                if ("all".equals(poolName)) {
-                        pool.restoreAll();
-                } else {
-                        ManaPoolType type = parsePoolType(poolName);
-                        if (type == null) {
-                                ctx.getSource().sendError(Text
-                                                .translatable("mana.command.error.invalid_pool"));
-                                return 0;
-                        }
-
-                        pool.restorePool(type);
+                int changed = forEachPool(players,
+                                type == null ? ManaPool::restoreAll
+                                                : pool -> pool.restorePool(type));
+                if (changed == 0) {
+                        return noComponent(ctx);
                 }
 
                 ctx.getSource().sendFeedback(() -> Text
-                                .translatable("mana.command.restore.success",
-                                                player.getName().getString(), poolName)
+                                .translatable(feedbackKey("mana.command.restore.success",
+                                                players), targets(players), poolName)
                                 .formatted(Formatting.GREEN), true);
 
-                return 1;
+                return changed;
         }
 
         /**
-         * Sets maximum mana for a pool.
+         * Sets the players' maximum mana for a pool.
          */
         private static int setMaxMana(@NotNull CommandContext<ServerCommandSource> ctx)
                         throws CommandSyntaxException {
-                ServerPlayerEntity player = EntityArgumentType.getPlayer(ctx, "player");
+                Collection<ServerPlayerEntity> players =
+                                EntityArgumentType.getPlayers(ctx, "player");
                 String poolName = StringArgumentType.getString(ctx, "pool");
                 double amount = DoubleArgumentType.getDouble(ctx, "amount");
 
-                ManaComponent component = ManaComponent.get(player);
-                if (component == null) {
-                        ctx.getSource().sendError(
-                                        Text.translatable("mana.command.error.no_component"));
-                        return 0;
-                }
-
-                ManaPool pool = component.getManaPool();
                 ManaPoolType type = parsePoolType(poolName);
-
                 if (type == null) {
                         ctx.getSource().sendError(
                                         Text.translatable("mana.command.error.invalid_pool"));
                         return 0;
                 }
 
-                double current = getPoolValue(pool, type);
-                double oldMax = getPoolMax(pool, type);
-                double difference = amount - oldMax;
-
-                pool.increaseMaxMana(type, difference);
+                int changed = forEachPool(players, pool -> pool.setMaxMana(type, amount));
+                if (changed == 0) {
+                        return noComponent(ctx);
+                }
 
                 ctx.getSource().sendFeedback(() -> Text
-                                .translatable("mana.command.setMax.success",
-                                                player.getName().getString(), poolName,
+                                .translatable(feedbackKey("mana.command.setMax.success", players),
+                                                targets(players), poolName,
                                                 String.format("%.1f", amount))
                                 .formatted(Formatting.GREEN), true);
 
-                return 1;
+                return changed;
         }
 
         /**
-         * Enables or disables mana regeneration.
+         * Enables or disables mana regeneration for the players.
          */
         private static int setRegeneration(@NotNull CommandContext<ServerCommandSource> ctx,
                         boolean enable) throws CommandSyntaxException {
-                ServerPlayerEntity player = EntityArgumentType.getPlayer(ctx, "player");
+                Collection<ServerPlayerEntity> players =
+                                EntityArgumentType.getPlayers(ctx, "player");
 
-                ManaComponent component = ManaComponent.get(player);
-                if (component == null) {
-                        ctx.getSource().sendError(
-                                        Text.translatable("mana.command.error.no_component"));
-                        return 0;
+                int changed = forEachPool(players, pool -> pool.setRegenerating(enable));
+                if (changed == 0) {
+                        return noComponent(ctx);
                 }
 
-                component.getManaPool().setRegenerating(enable);
-
                 ctx.getSource().sendFeedback(() -> Text
-                                .translatable(enable ? "mana.command.regen.enable"
-                                                : "mana.command.regen.disable",
-                                                player.getName().getString())
+                                .translatable(feedbackKey(enable ? "mana.command.regen.enable"
+                                                : "mana.command.regen.disable", players),
+                                                targets(players))
                                 .formatted(Formatting.GREEN), true);
 
-                return 1;
+                return changed;
         }
 
-        // ==================== CONFIG COMMANDS ====================
+        /**
+         * Applies an action to the mana pool of every player that has one.
+         *
+         * @return The number of players the action was applied to
+         */
+        private static int forEachPool(@NotNull Collection<ServerPlayerEntity> players,
+                        @NotNull Consumer<ManaPool> action) {
+                int changed = 0;
+                for (ServerPlayerEntity player : players) {
+                        ManaComponent component = ManaComponent.get(player);
+                        if (component != null) {
+                                action.accept(component.getManaPool());
+                                changed++;
+                        }
+                }
+                return changed;
+        }
 
         /**
-         * Reloads configuration from file.
+         * Applies an action that can fail to the mana pool of every player that has one.
+         *
+         * @param failed Receives the players with a pool the action failed for
+         * @return The players the action succeeded for
          */
-        private static int reloadConfig(@NotNull CommandContext<ServerCommandSource> ctx) {
-                try {
-                        ManaConfig.initialize();
-                        ctx.getSource().sendFeedback(() -> Text.translatable("mana.config.loaded")
-                                        .formatted(Formatting.GREEN), true);
-                        return 1;
-                } catch (Exception e) {
-                        ctx.getSource().sendError(
-                                        Text.translatable("mana.config.error", e.getMessage()));
+        private static List<ServerPlayerEntity> forEachPool(
+                        @NotNull Collection<ServerPlayerEntity> players,
+                        @NotNull Predicate<ManaPool> action,
+                        @NotNull List<ServerPlayerEntity> failed) {
+                List<ServerPlayerEntity> succeeded = new ArrayList<>(players.size());
+                for (ServerPlayerEntity player : players) {
+                        ManaComponent component = ManaComponent.get(player);
+                        if (component != null) {
+                                (action.test(component.getManaPool()) ? succeeded : failed)
+                                                .add(player);
+                        }
+                }
+                return succeeded;
+        }
+
+        /**
+         * Picks the feedback message for a command's targets: the single-player message, or its
+         * {@code .multiple} variant, which takes a player count instead of a name.
+         */
+        private static String feedbackKey(@NotNull String key,
+                        @NotNull Collection<ServerPlayerEntity> players) {
+                return players.size() == 1 ? key : key + ".multiple";
+        }
+
+        /**
+         * Describes the targets of a command for its feedback: the player's name for a single
+         * target, otherwise the count.
+         */
+        private static Object targets(@NotNull Collection<ServerPlayerEntity> players) {
+                if (players.size() == 1) {
+                        return players.iterator().next().getName().getString();
+                }
+                return players.size();
+        }
+
+        private static int noComponent(@NotNull CommandContext<ServerCommandSource> ctx) {
+                ctx.getSource().sendError(Text.translatable("mana.command.error.no_component"));
+                return 0;
+        }
+
+        // ==================== OFFLINE COMMANDS ====================
+
+        /**
+         * Displays a player's mana by UUID, from the persisted record if they are offline.
+         */
+        private static int getOfflineMana(@NotNull CommandContext<ServerCommandSource> ctx) {
+                UUID playerId = UuidArgumentType.getUuid(ctx, "uuid");
+                ServerPlayerEntity online =
+                                ctx.getSource().getServer().getPlayerManager().getPlayer(playerId);
+                if (online != null) {
+                        return displayPlayerMana(ctx, online);
+                }
+
+                if (!ManaWriteBehind.isRunning()) {
+                        ctx.getSource().sendError(Text.translatable(
+                                        "mana.command.error.offline_unavailable"));
                         return 0;
                 }
+
+                // Players who just left are still loaded, and their pool is newer than the record
+                ManaComponent loaded = ManaComponents.getIfExists(playerId);
+                ManaPool pool = loaded != null ? loaded.getManaPool()
+                                : ManaWriteBehind.readOffline(playerId);
+                if (pool == null) {
+                        ctx.getSource().sendError(Text.translatable("mana.command.error.no_record",
+                                        playerId.toString()));
+                        return 0;
+                }
+
+                return displayPoolMana(ctx, playerId.toString(), pool);
         }
 
         /**
-         * Saves current configuration to file.
+         * Sets a player's mana by UUID, editing the persisted record if they are offline.
          */
-        private static int saveConfig(@NotNull CommandContext<ServerCommandSource> ctx) {
-                try {
-                        ManaConfig.save();
-                        ctx.getSource().sendFeedback(() -> Text.translatable("mana.config.saved")
+        private static int setOfflineMana(@NotNull CommandContext<ServerCommandSource> ctx) {
+                UUID playerId = UuidArgumentType.getUuid(ctx, "uuid");
+                String poolName = StringArgumentType.getString(ctx, "pool");
+                double amount = DoubleArgumentType.getDouble(ctx, "amount");
+
+                ManaPoolType type = parsePoolType(poolName);
+                if (type == null) {
+                        ctx.getSource().sendError(
+                                        Text.translatable("mana.command.error.invalid_pool"));
+                        return 0;
+                }
+
+                ServerCommandSource source = ctx.getSource();
+                ServerPlayerEntity online = source.getServer().getPlayerManager().getPlayer(playerId);
+                if (online != null) {
+                        ManaComponents.get(online).getManaPool().setMana(type, amount);
+                        source.sendFeedback(() -> Text
+                                        .translatable("mana.command.set.success",
+                                                        online.getName().getString(), poolName,
+                                                        String.format("%.1f", amount))
                                         .formatted(Formatting.GREEN), true);
                         return 1;
-                } catch (IOException e) {
-                        ctx.getSource().sendError(
-                                        Text.translatable("mana.config.error", e.getMessage()));
+                }
+
+                if (!ManaWriteBehind.isRunning()) {
+                        source.sendError(Text.translatable(
+                                        "mana.command.error.offline_unavailable"));
                         return 0;
                 }
+
+                // Edit a still-loaded pool directly; eviction persists it
+                ManaComponent loaded = ManaComponents.getIfExists(playerId);
+                if (loaded != null) {
+                        loaded.getManaPool().setMana(type, amount);
+                        source.sendFeedback(() -> Text
+                                        .translatable("mana.command.set.success",
+                                                        playerId.toString(), poolName,
+                                                        String.format("%.1f", amount))
+                                        .formatted(Formatting.GREEN), true);
+                        return 1;
+                }
+
+                ManaWriteBehind.editOffline(playerId, pool -> pool.setMana(type, amount))
+                                .whenComplete((found, error) -> source.getServer().execute(() -> {
+                                        if (error != null) {
+                                                source.sendError(Text.literal(
+                                                                describeFailure(error)));
+                                        } else if (!found) {
+                                                source.sendError(Text.translatable(
+                                                                "mana.command.error.no_record",
+                                                                playerId.toString()));
+                                        } else {
+                                                source.sendFeedback(() -> Text.translatable(
+                                                                "mana.command.set.success",
+                                                                playerId.toString(), poolName,
+                                                                String.format("%.1f", amount))
+                                                                .formatted(Formatting.GREEN),
+                                                                true);
+                                        }
+                                }));
+                return 1;
+        }
+
+        // ==================== CONFIG COMMANDS ====================
+
+        /**
+         * Reloads configuration from file. Reading and validation run off the server thread; the
+         * result is reported back on it.
+         */
+        private static int reloadConfig(@NotNull CommandContext<ServerCommandSource> ctx) {
+                ServerCommandSource source = ctx.getSource();
+                ManaConfig.reloadAsync().whenComplete((issues, error) -> source.getServer()
+                                .execute(() -> {
+                                        if (error != null) {
+                                                source.sendError(Text.translatable(
+                                                                "mana.config.error",
+                                                                describeFailure(error)));
+                                        } else if (!issues.isEmpty()) {
+                                                source.sendError(Text.translatable(
+                                                                "mana.config.invalid",
+                                                                String.join("; ", issues)));
+                                        } else {
+                                                source.sendFeedback(() -> Text
+                                                                .translatable("mana.config.loaded")
+                                                                .formatted(Formatting.GREEN),
+                                                                true);
+                                        }
+                                }));
+                return 1;
+        }
+
+        /**
+         * Saves current configuration to file. The write runs on the config writer thread; the
+         * result is reported back on the server thread.
+         */
+        private static int saveConfig(@NotNull CommandContext<ServerCommandSource> ctx) {
+                ServerCommandSource source = ctx.getSource();
+                ManaConfig.saveAsync().whenComplete((result, error) -> source.getServer()
+                                .execute(() -> {
+                                        if (error != null) {
+                                                source.sendError(Text.translatable(
+                                                                "mana.config.error",
+                                                                describeFailure(error)));
+                                        } else {
+                                                source.sendFeedback(() -> Text
+                                                                .translatable("mana.config.saved")
+                                                                .formatted(Formatting.GREEN),
+                                                                true);
+                                        }
+                                }));
+                return 1;
         }
 
         /**
          * Lists current configuration values.
          */
         private static int listConfig(@NotNull CommandContext<ServerCommandSource> ctx) {
+                ManaConfigSnapshot config = ManaConfig.snapshot();
+
                 ctx.getSource().sendFeedback(() -> Text.literal("=== Mana Configuration ===")
                                 .formatted(Formatting.GOLD), false);
 
                 ctx.getSource().sendFeedback(() -> Text.literal(String.format("Overlay Enabled: %s",
-                                ManaConfig.isOverlayEnabled())), false);
+                                config.overlayEnabled())), false);
 
                 ctx.getSource().sendFeedback(() -> Text.literal(
-                                String.format("Overlay Scale: %.2f", ManaConfig.getOverlayScale())),
+                                String.format("Overlay Scale: %.2f", config.overlayScale())),
                                 false);
 
                 ctx.getSource().sendFeedback(
                                 () -> Text.literal(String.format("Overlay Position: (%d, %d)",
-                                                ManaConfig.getOverlayXOffset(),
-                                                ManaConfig.getOverlayYOffset())),
+                                                config.overlayXOffset(),
+                                                config.overlayYOffset())),
                                 false);
 
                 ctx.getSource().sendFeedback(
                                 () -> Text.literal(String.format("Overlay Transparency: %.2f",
-                                                ManaConfig.getOverlayTransparency())),
+                                                config.overlayTransparency())),
                                 false);
 
                 ctx.getSource().sendFeedback(
                                 () -> Text.literal(String.format("Spell Cost Multiplier: %.2f",
-                                                ManaConfig.getSpellManaCostMultiplier())),
+                                                config.spellManaCostMultiplier())),
                                 false);
 
                 ctx.getSource().sendFeedback(
                                 () -> Text.literal(String.format(
                                                 "Ritual Difficulty Multiplier: %.2f",
-                                                ManaConfig.getRitualDifficultyMultiplier())),
+                                                config.ritualDifficultyMultiplier())),
+                                false);
+
+                ctx.getSource().sendFeedback(() -> Text.literal(String.format(
+                                "Lazy Regeneration: %s", config.lazyRegenEnabled())), false);
+
+                ctx.getSource().sendFeedback(() -> Text.literal(String.format(
+                                "Write-Behind Persistence: %s (flush every %.1fs)",
+                                config.writeBehindEnabled(), config.flushIntervalSeconds())),
                                 false);
 
                 return 1;
         }
 
+        /**
+         * Gets a readable message for a failed config future, unwrapping the completion wrapper.
+         */
+        private static String describeFailure(@NotNull Throwable error) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause()
+                                : error;
+                return cause.getMessage();
+        }
+
         // ==================== DEBUG COMMANDS ====================
 
         /**
@@ -605,6 +803,43 @@ public class ManaCommand {
                                 .literal(String.format("Active ManaComponents: %d", componentCount))
                                 .formatted(Formatting.AQUA), false);
 
+                int departedCount = ManaComponents.departedCount();
+                ctx.getSource().sendFeedback(() -> Text
+                                .literal(String.format("Departed ManaComponents: %d",
+                                                departedCount))
+                                .formatted(Formatting.AQUA), false);
+
+                int regeneratingCount = ManaComponents.activeCount();
+                ctx.getSource().sendFeedback(() -> Text
+                                .literal(String.format("Regenerating ManaComponents: %d",
+                                                regeneratingCount))
+                                .formatted(Formatting.AQUA), false);
+
+                long storeBytes = ManaComponents.store().estimatedMemoryBytes();
+                int storeCapacity = ManaComponents.store().capacity();
+                ctx.getSource().sendFeedback(() -> Text
+                                .literal(String.format("Pool Store: %d slots, %d bytes (%d/slot)",
+                                                storeCapacity, storeBytes,
+                                                ManaPoolStore.bytesPerSlot()))
+                                .formatted(Formatting.AQUA), false);
+
+                int recordCount = ManaWriteBehind.recordCount();
+                long mappedBytes = ManaWriteBehind.mappedBytes();
+                ctx.getSource().sendFeedback(() -> Text
+                                .literal(String.format("Persisted Records: %d (%d bytes mapped)",
+                                                recordCount, mappedBytes))
+                                .formatted(Formatting.AQUA), false);
+
+                int syncInterval = ManaSync.getLoadInterval();
+                ctx.getSource().sendFeedback(() -> Text
+                                .literal(String.format("Sync Interval: %d tick(s)", syncInterval))
+                                .formatted(Formatting.AQUA), false);
+
+                int pendingTimers = ManaTimers.pending();
+                ctx.getSource().sendFeedback(() -> Text
+                                .literal(String.format("Pending Timers: %d", pendingTimers))
+                                .formatted(Formatting.AQUA), false);
+
                 Collection<ServerPlayerEntity> players =
                                 ctx.getSource().getServer().getPlayerManager().getPlayerList();
                 ctx.getSource().sendFeedback(() -> Text
@@ -633,6 +868,19 @@ public class ManaCommand {
                 };
         }
 
+        /**
+         * Parses a pool name, or "all", into a pool mask.
+         *
+         * @return The mask, or 0 if the name is invalid
+         */
+        private static int parsePoolMask(String name) {
+                if ("all".equals(name)) {
+                        return ManaPool.ALL_POOLS;
+                }
+                ManaPoolType type = parsePoolType(name);
+                return type != null ? type.mask() : 0;
+        }
+
         /**
          * Gets the current value of a pool.
          */
@@ -654,58 +902,4 @@ public class ManaCommand {
                         case TERTIARY -> pool.getTertiaryMax();
                 };
         }
-
-        /**
-         * Sets the value of a pool (uses reflection-like approach via restore/consume).
-         */
-        private static void setPoolValue(@NotNull ManaPool pool, @NotNull ManaPoolType type,
-                        double value) {
-                double current = getPoolValue(pool, type);
-                double max = getPoolMax(pool, type);
-                value = Math.max(0, Math.min(value, max));
-
-                if (value > current) {
-                        // Need to add mana
-                        pool.restorePool(type);
-                        if (value < max) {
-                                double toRemove = max - value;
-                                consumeFromPool(pool, type, toRemove);
-                        }
-                } else if (value < current) {
-                        // Need to remove mana
-                        double toRemove = current - value;
-                        consumeFromPool(pool, type, toRemove);
-                }
-        }
-
-        /**
-         * Consumes a specific amount from a specific pool.
-         */
-        private static void consumeFromPool(@NotNull ManaPool pool, @NotNull ManaPoolType type,
-                        double amount) {
-                // Temporarily modify other pools to force consumption from target pool
-                double primaryBackup = pool.getPrimaryMana();
-                double secondaryBackup = pool.getSecondaryMana();
-                double tertiaryBackup = pool.getTertiaryMana();
-
-                // Zero out pools we don't want to consume from
-                switch (type) {
-                        case PRIMARY -> {
-                                pool.consumeMana(pool.getSecondaryMana() + pool.getTertiaryMana());
-                                pool.consumeMana(amount);
-                                pool.restoreMana(secondaryBackup + tertiaryBackup);
-                        }
-                        case SECONDARY -> {
-                                pool.consumeMana(pool.getPrimaryMana());
-                                pool.consumeMana(pool.getTertiaryMana());
-                                pool.consumeMana(amount);
-                                pool.restoreMana(primaryBackup + tertiaryBackup);
-                        }
-                        case TERTIARY -> {
-                                pool.consumeMana(pool.getPrimaryMana() + pool.getSecondaryMana());
-                                pool.consumeMana(amount);
-                                pool.restoreMana(primaryBackup + secondaryBackup);
-                        }
-                }
-        }
 }
@@ -1,15 +1,33 @@
 package dk.mosberg.config;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
 import dk.mosberg.Mana;
 import net.fabricmc.loader.api.FabricLoader;
@@ -17,6 +35,12 @@ import net.fabricmc.loader.api.FabricLoader;
 /**
  * Advanced configuration system with automatic file handling, validation, and listeners. Supports
  * multiple data types with JSON-based persistence and runtime updates.
+ *
+ * <p>
+ * The raw key/value data is only touched when the configuration changes. Every change compiles it
+ * into an immutable {@link ManaConfigSnapshot} that is swapped in atomically, and all getters read
+ * from the current snapshot. Consumers that cache derived state subscribe to the keys they depend
+ * on instead of polling the getters.
  */
 public class ManaConfig {
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
@@ -24,6 +48,17 @@ public class ManaConfig {
     private static final Path CONFIG_FILE = CONFIG_DIR.resolve("mana.json");
     private static final Map<String, Object> configData = new ConcurrentHashMap<>();
     private static final List<ConfigEntry> DEFAULT_ENTRIES = new ArrayList<>();
+    private static final Object LOCK = new Object();
+    private static final Object SAVE_LOCK = new Object();
+
+    // Single writer so saves never interleave on disk
+    private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "Mana Config Writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static CompletableFuture<Void> pendingSave;
 
     // Default configuration values
     private static final boolean DEFAULT_OVERLAY_ENABLED = true;
@@ -34,10 +69,23 @@ public class ManaConfig {
     private static final double DEFAULT_SPELL_COST_MULTIPLIER = 1.0;
     private static final double DEFAULT_RITUAL_DIFFICULTY_MULTIPLIER = 1.0;
     private static final boolean DEFAULT_MANA_BAR_ENABLED = true;
+    private static final boolean DEFAULT_LAZY_REGEN_ENABLED = true;
+    private static final boolean DEFAULT_WRITE_BEHIND_ENABLED = true;
+    private static final double DEFAULT_FLUSH_INTERVAL_SECONDS = 5.0;
+
+    private static volatile ManaConfigSnapshot snapshot = compile(Map.of());
+
+    // Compiled value of each key, used to diff snapshots when dispatching changes
+    private static final Map<String, Function<ManaConfigSnapshot, Object>> SNAPSHOT_VALUES =
+            new LinkedHashMap<>();
+    private static final List<Subscription> SUBSCRIPTIONS = new CopyOnWriteArrayList<>();
+    private static int batchDepth;
+    private static ManaConfigSnapshot batchStart;
 
     static {
         // Register default configuration entries
         registerDefaults();
+        registerSnapshotValues();
     }
 
     /**
@@ -60,23 +108,208 @@ public class ManaConfig {
                 DEFAULT_RITUAL_DIFFICULTY_MULTIPLIER, "Multiplies ritual difficulty"));
         DEFAULT_ENTRIES.add(new ConfigEntry("render.hud.manaBar.enabled", DEFAULT_MANA_BAR_ENABLED,
                 "Enables/disables mana bar HUD"));
+        DEFAULT_ENTRIES.add(new ConfigEntry("magic.regen.lazy", DEFAULT_LAZY_REGEN_ENABLED,
+                "Derive mana regeneration on access instead of ticking every player"));
+        DEFAULT_ENTRIES.add(new ConfigEntry("persistence.writeBehind.enabled",
+                DEFAULT_WRITE_BEHIND_ENABLED,
+                "Persist mana in a batched background store (applies on restart)"));
+        DEFAULT_ENTRIES.add(new ConfigEntry("persistence.flush.intervalSeconds",
+                DEFAULT_FLUSH_INTERVAL_SECONDS,
+                "Seconds between write-behind flushes (0.5-60.0)"));
+    }
+
+    /**
+     * Maps each configuration key to its compiled snapshot value.
+     */
+    private static void registerSnapshotValues() {
+        SNAPSHOT_VALUES.put("overlay.enabled", ManaConfigSnapshot::overlayEnabled);
+        SNAPSHOT_VALUES.put("overlay.scale", ManaConfigSnapshot::overlayScale);
+        SNAPSHOT_VALUES.put("overlay.xOffset", ManaConfigSnapshot::overlayXOffset);
+        SNAPSHOT_VALUES.put("overlay.yOffset", ManaConfigSnapshot::overlayYOffset);
+        SNAPSHOT_VALUES.put("overlay.transparency", ManaConfigSnapshot::overlayTransparency);
+        SNAPSHOT_VALUES.put("magic.spell.manaCost.multiplier",
+                ManaConfigSnapshot::spellManaCostMultiplier);
+        SNAPSHOT_VALUES.put("magic.ritual.difficulty.multiplier",
+                ManaConfigSnapshot::ritualDifficultyMultiplier);
+        SNAPSHOT_VALUES.put("render.hud.manaBar.enabled", ManaConfigSnapshot::manaBarEnabled);
+        SNAPSHOT_VALUES.put("magic.regen.lazy", ManaConfigSnapshot::lazyRegenEnabled);
+        SNAPSHOT_VALUES.put("persistence.writeBehind.enabled",
+                ManaConfigSnapshot::writeBehindEnabled);
+        SNAPSHOT_VALUES.put("persistence.flush.intervalSeconds",
+                ManaConfigSnapshot::flushIntervalSeconds);
     }
 
     /**
      * Initializes the configuration system. Loads existing config or creates default.
      */
     public static void initialize() {
-        try {
-            if (Files.exists(CONFIG_FILE)) {
-                load();
-            } else {
+        synchronized (LOCK) {
+            try {
+                if (Files.exists(CONFIG_FILE)) {
+                    load();
+                } else {
+                    createDefault();
+                    save();
+                }
+                Mana.LOGGER.info("Configuration loaded successfully");
+            } catch (IOException e) {
+                Mana.LOGGER.error("Failed to initialize configuration", e);
                 createDefault();
-                save();
             }
-            Mana.LOGGER.info("Configuration loaded successfully");
-        } catch (IOException e) {
-            Mana.LOGGER.error("Failed to initialize configuration", e);
-            createDefault();
+            publish();
+        }
+    }
+
+    /**
+     * Gets the current configuration snapshot. Read it once and use its fields when several values
+     * must be consistent with each other.
+     *
+     * @return The current immutable snapshot
+     */
+    public static ManaConfigSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Compiles the raw data into a new snapshot and publishes it. Callers hold {@link #LOCK}.
+     */
+    private static void publish() {
+        swap(compile(configData));
+    }
+
+    /**
+     * Swaps in a snapshot and notifies subscribers, unless a batch is open. Callers hold
+     * {@link #LOCK}, which keeps notifications in publication order.
+     */
+    private static void swap(ManaConfigSnapshot next) {
+        ManaConfigSnapshot previous = snapshot;
+        snapshot = next;
+        if (batchDepth == 0) {
+            dispatch(previous, next);
+        }
+    }
+
+    /**
+     * Diffs two snapshots and sends one change to every subscriber whose pattern it affects.
+     */
+    private static void dispatch(ManaConfigSnapshot previous, ManaConfigSnapshot current) {
+        if (SUBSCRIPTIONS.isEmpty() || previous.equals(current)) {
+            return;
+        }
+
+        Set<String> changedKeys = new LinkedHashSet<>();
+        SNAPSHOT_VALUES.forEach((key, value) -> {
+            if (!value.apply(previous).equals(value.apply(current))) {
+                changedKeys.add(key);
+            }
+        });
+        ManaConfigChange change =
+                new ManaConfigChange(previous, current, Collections.unmodifiableSet(changedKeys));
+
+        for (Subscription subscription : SUBSCRIPTIONS) {
+            if (change.affects(subscription.pattern())) {
+                try {
+                    subscription.listener().onConfigChanged(change);
+                } catch (RuntimeException e) {
+                    Mana.LOGGER.error("Configuration listener failed for '{}'",
+                            subscription.pattern(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscribes to changes of a key or key prefix. Patterns are an exact key such as
+     * {@code overlay.scale}, a prefix such as {@code overlay.*}, or {@code *} for every key. The
+     * listener receives one coalesced change per publication, however many matching keys it
+     * touches.
+     *
+     * @param pattern The key or prefix pattern
+     * @param listener The listener to notify
+     */
+    public static void subscribe(String pattern, ManaConfigListener listener) {
+        SUBSCRIPTIONS.add(new Subscription(pattern, listener));
+    }
+
+    /**
+     * Removes every subscription of a listener.
+     *
+     * @param listener The listener to remove
+     */
+    public static void unsubscribe(ManaConfigListener listener) {
+        SUBSCRIPTIONS.removeIf(subscription -> subscription.listener() == listener);
+    }
+
+    /**
+     * Applies several changes as one publication. Snapshots are still swapped per change, but
+     * subscribers are notified once, with the difference between the snapshot before the batch
+     * and the one after it. Batches may nest.
+     *
+     * @param changes The changes to apply
+     */
+    public static void batch(Runnable changes) {
+        synchronized (LOCK) {
+            if (batchDepth++ == 0) {
+                batchStart = snapshot;
+            }
+            try {
+                changes.run();
+            } finally {
+                if (--batchDepth == 0) {
+                    ManaConfigSnapshot start = batchStart;
+                    batchStart = null;
+                    dispatch(start, snapshot);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles raw key/value data into a snapshot, falling back to defaults for missing or
+     * mistyped values.
+     *
+     * @param data The raw configuration data
+     * @return The compiled snapshot
+     */
+    private static ManaConfigSnapshot compile(Map<String, Object> data) {
+        return new ManaConfigSnapshot(
+                readBoolean(data, "overlay.enabled", DEFAULT_OVERLAY_ENABLED),
+                readDouble(data, "overlay.scale", DEFAULT_OVERLAY_SCALE),
+                readInt(data, "overlay.xOffset", DEFAULT_OVERLAY_X_OFFSET),
+                readInt(data, "overlay.yOffset", DEFAULT_OVERLAY_Y_OFFSET),
+                readDouble(data, "overlay.transparency", DEFAULT_OVERLAY_TRANSPARENCY),
+                readDouble(data, "magic.spell.manaCost.multiplier", DEFAULT_SPELL_COST_MULTIPLIER),
+                readDouble(data, "magic.ritual.difficulty.multiplier",
+                        DEFAULT_RITUAL_DIFFICULTY_MULTIPLIER),
+                readBoolean(data, "render.hud.manaBar.enabled", DEFAULT_MANA_BAR_ENABLED),
+                readBoolean(data, "magic.regen.lazy", DEFAULT_LAZY_REGEN_ENABLED),
+                readBoolean(data, "persistence.writeBehind.enabled", DEFAULT_WRITE_BEHIND_ENABLED),
+                readDouble(data, "persistence.flush.intervalSeconds",
+                        DEFAULT_FLUSH_INTERVAL_SECONDS));
+    }
+
+    private static boolean readBoolean(Map<String, Object> data, String key, boolean fallback) {
+        Object value = data.getOrDefault(key, fallback);
+        return value instanceof Boolean ? (Boolean) value : fallback;
+    }
+
+    private static double readDouble(Map<String, Object> data, String key, double fallback) {
+        Object value = data.getOrDefault(key, fallback);
+        return value instanceof Number ? ((Number) value).doubleValue() : fallback;
+    }
+
+    private static int readInt(Map<String, Object> data, String key, int fallback) {
+        Object value = data.getOrDefault(key, fallback);
+        return value instanceof Number ? ((Number) value).intValue() : fallback;
+    }
+
+    /**
+     * Stores a raw value and publishes a new snapshot.
+     */
+    private static void update(String key, Object value) {
+        synchronized (LOCK) {
+            configData.put(key, value);
+            publish();
         }
     }
 
@@ -96,50 +329,174 @@ public class ManaConfig {
      * @throws IOException If file reading fails
      */
     private static void load() throws IOException {
-        String json = Files.readString(CONFIG_FILE);
-        JsonObject jsonObject = JsonParser.parseString(json).getAsJsonObject();
-
+        Map<String, Object> data = parse(Files.readString(CONFIG_FILE));
         configData.clear();
-        jsonObject.entrySet().forEach(entry -> {
+        configData.putAll(data);
+    }
+
+    /**
+     * Parses configuration JSON into raw key/value data, filling in defaults for missing keys.
+     *
+     * @param json The JSON text
+     * @return The parsed data
+     * @throws JsonParseException If the text is not a JSON object
+     */
+    private static Map<String, Object> parse(String json) {
+        JsonElement root = JsonParser.parseString(json);
+        if (!root.isJsonObject()) {
+            throw new JsonParseException("Configuration root must be a JSON object");
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        root.getAsJsonObject().entrySet().forEach(entry -> {
             String key = entry.getKey();
             if (entry.getValue().isJsonPrimitive()) {
                 var primitive = entry.getValue().getAsJsonPrimitive();
                 if (primitive.isBoolean()) {
-                    configData.put(key, primitive.getAsBoolean());
+                    data.put(key, primitive.getAsBoolean());
                 } else if (primitive.isNumber()) {
-                    configData.put(key, primitive.getAsDouble());
+                    data.put(key, primitive.getAsDouble());
                 } else if (primitive.isString()) {
-                    configData.put(key, primitive.getAsString());
+                    data.put(key, primitive.getAsString());
                 }
             }
         });
 
         // Ensure all defaults exist
         for (ConfigEntry entry : DEFAULT_ENTRIES) {
-            configData.putIfAbsent(entry.getKey(), entry.getDefaultValue());
+            data.putIfAbsent(entry.getKey(), entry.getDefaultValue());
+        }
+        return data;
+    }
+
+    /**
+     * Reads, parses and validates the config file, and publishes it only if it is valid. Runs on
+     * the caller's thread; the live configuration is untouched until the final swap.
+     *
+     * @return Validation issues, empty if the new configuration was applied
+     * @throws IOException If file reading fails
+     * @throws JsonParseException If the file is not valid configuration JSON
+     */
+    static List<String> reloadFromDisk() throws IOException {
+        Map<String, Object> data = parse(Files.readString(CONFIG_FILE));
+        ManaConfigSnapshot candidate = compile(data);
+        List<String> issues = validateConfig(candidate);
+        if (!issues.isEmpty()) {
+            return issues;
+        }
+
+        synchronized (LOCK) {
+            configData.clear();
+            configData.putAll(data);
+            swap(candidate);
         }
+        return issues;
+    }
+
+    /**
+     * Reloads the config file on the background config thread, so callers never block on disk
+     * access or parsing.
+     *
+     * @return A future completing with validation issues, empty if the reload was applied
+     */
+    public static CompletableFuture<List<String>> reloadAsync() {
+        return ManaConfigWatcher.reload();
+    }
+
+    static Path getConfigDir() {
+        return CONFIG_DIR;
+    }
+
+    static Path getConfigFile() {
+        return CONFIG_FILE;
     }
 
     /**
-     * Saves configuration to file.
+     * Saves configuration to file on the calling thread. Prefer {@link #saveAsync()} from the
+     * server or render thread.
      *
      * @throws IOException If file writing fails
      */
     public static void save() throws IOException {
-        Files.createDirectories(CONFIG_DIR);
+        write(serialize());
+    }
+
+    /**
+     * Queues a save on the background writer thread. Saves requested while one is still queued
+     * are coalesced into it, and the writer serializes the configuration when it runs, so the
+     * newest values are always the ones written.
+     *
+     * @return A future completing once the file has been written, or exceptionally on failure
+     */
+    public static CompletableFuture<Void> saveAsync() {
+        synchronized (SAVE_LOCK) {
+            if (pendingSave != null) {
+                return pendingSave;
+            }
+
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            pendingSave = future;
+            SAVE_EXECUTOR.execute(() -> {
+                synchronized (SAVE_LOCK) {
+                    pendingSave = null;
+                }
+                try {
+                    write(serialize());
+                    future.complete(null);
+                } catch (IOException | RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            return future;
+        }
+    }
 
+    /**
+     * Serializes the current raw data to JSON.
+     */
+    private static String serialize() {
         JsonObject jsonObject = new JsonObject();
-        configData.forEach((key, value) -> {
-            if (value instanceof Boolean) {
-                jsonObject.addProperty(key, (Boolean) value);
-            } else if (value instanceof Number) {
-                jsonObject.addProperty(key, (Number) value);
-            } else if (value instanceof String) {
-                jsonObject.addProperty(key, (String) value);
+        synchronized (LOCK) {
+            configData.forEach((key, value) -> {
+                if (value instanceof Boolean) {
+                    jsonObject.addProperty(key, (Boolean) value);
+                } else if (value instanceof Number) {
+                    jsonObject.addProperty(key, (Number) value);
+                } else if (value instanceof String) {
+                    jsonObject.addProperty(key, (String) value);
+                }
+            });
+        }
+        return GSON.toJson(jsonObject);
+    }
+
+    /**
+     * Writes the config file atomically: the content goes to a temp file in the same directory,
+     * is forced to disk, and then replaces {@code mana.json} in a single move. A crash leaves
+     * either the old or the new file, never a truncated one.
+     *
+     * @param json The content to write
+     * @throws IOException If file writing fails
+     */
+    private static synchronized void write(String json) throws IOException {
+        Files.createDirectories(CONFIG_DIR);
+        Path temp = CONFIG_DIR.resolve(CONFIG_FILE.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
             }
-        });
+            channel.force(true);
+        }
 
-        Files.writeString(CONFIG_FILE, GSON.toJson(jsonObject));
+        try {
+            Files.move(temp, CONFIG_FILE, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, CONFIG_FILE, StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
     /**
@@ -148,83 +505,98 @@ public class ManaConfig {
      * @return List of validation error messages, empty if valid
      */
     public static List<String> validateConfig() {
+        return validateConfig(snapshot);
+    }
+
+    /**
+     * Validates a configuration snapshot and returns a list of issues.
+     *
+     * @param config The snapshot to validate
+     * @return List of validation error messages, empty if valid
+     */
+    public static List<String> validateConfig(ManaConfigSnapshot config) {
         List<String> issues = new ArrayList<>();
 
         // Validate overlay scale
-        double scale = getOverlayScale();
+        double scale = config.overlayScale();
         if (scale < 0.5 || scale > 2.0) {
             issues.add("overlay.scale must be between 0.5 and 2.0");
         }
 
         // Validate transparency
-        double transparency = getOverlayTransparency();
+        double transparency = config.overlayTransparency();
         if (transparency < 0.0 || transparency > 1.0) {
             issues.add("overlay.transparency must be between 0.0 and 1.0");
         }
 
         // Validate multipliers
-        double spellMultiplier = getSpellManaCostMultiplier();
+        double spellMultiplier = config.spellManaCostMultiplier();
         if (spellMultiplier < 0.0) {
             issues.add("magic.spell.manaCost.multiplier must be non-negative");
         }
 
-        double ritualMultiplier = getRitualDifficultyMultiplier();
+        double ritualMultiplier = config.ritualDifficultyMultiplier();
         if (ritualMultiplier < 0.0) {
             issues.add("magic.ritual.difficulty.multiplier must be non-negative");
         }
 
+        // Validate persistence
+        double flushInterval = config.flushIntervalSeconds();
+        if (flushInterval < 0.5 || flushInterval > 60.0) {
+            issues.add("persistence.flush.intervalSeconds must be between 0.5 and 60.0");
+        }
+
         return issues;
     }
 
     // --- Overlay Configuration ---
 
     public static boolean isOverlayEnabled() {
-        Object value = configData.getOrDefault("overlay.enabled", DEFAULT_OVERLAY_ENABLED);
-        return value instanceof Boolean ? (Boolean) value : DEFAULT_OVERLAY_ENABLED;
+        return snapshot.overlayEnabled();
     }
 
     public static double getOverlayScale() {
-        Object value = configData.getOrDefault("overlay.scale", DEFAULT_OVERLAY_SCALE);
-        return value instanceof Number ? ((Number) value).doubleValue() : DEFAULT_OVERLAY_SCALE;
+        return snapshot.overlayScale();
     }
 
     public static int getOverlayXOffset() {
-        Object value = configData.getOrDefault("overlay.xOffset", DEFAULT_OVERLAY_X_OFFSET);
-        return value instanceof Number ? ((Number) value).intValue() : DEFAULT_OVERLAY_X_OFFSET;
+        return snapshot.overlayXOffset();
     }
 
     public static int getOverlayYOffset() {
-        Object value = configData.getOrDefault("overlay.yOffset", DEFAULT_OVERLAY_Y_OFFSET);
-        return value instanceof Number ? ((Number) value).intValue() : DEFAULT_OVERLAY_Y_OFFSET;
+        return snapshot.overlayYOffset();
     }
 
     public static double getOverlayTransparency() {
-        Object value =
-                configData.getOrDefault("overlay.transparency", DEFAULT_OVERLAY_TRANSPARENCY);
-        return value instanceof Number ? ((Number) value).doubleValue()
-                : DEFAULT_OVERLAY_TRANSPARENCY;
+        return snapshot.overlayTransparency();
     }
 
     // --- Modpack Creator Options ---
 
     public static double getSpellManaCostMultiplier() {
-        Object value = configData.getOrDefault("magic.spell.manaCost.multiplier",
-                DEFAULT_SPELL_COST_MULTIPLIER);
-        return value instanceof Number ? ((Number) value).doubleValue()
-                : DEFAULT_SPELL_COST_MULTIPLIER;
+        return snapshot.spellManaCostMultiplier();
     }
 
     public static boolean isManaBarEnabled() {
-        Object value =
-                configData.getOrDefault("render.hud.manaBar.enabled", DEFAULT_MANA_BAR_ENABLED);
-        return value instanceof Boolean ? (Boolean) value : DEFAULT_MANA_BAR_ENABLED;
+        return snapshot.manaBarEnabled();
     }
 
     public static double getRitualDifficultyMultiplier() {
-        Object value = configData.getOrDefault("magic.ritual.difficulty.multiplier",
-                DEFAULT_RITUAL_DIFFICULTY_MULTIPLIER);
-        return value instanceof Number ? ((Number) value).doubleValue()
-                : DEFAULT_RITUAL_DIFFICULTY_MULTIPLIER;
+        return snapshot.ritualDifficultyMultiplier();
+    }
+
+    public static boolean isLazyRegenEnabled() {
+        return snapshot.lazyRegenEnabled();
+    }
+
+    // --- Persistence ---
+
+    public static boolean isWriteBehindEnabled() {
+        return snapshot.writeBehindEnabled();
+    }
+
+    public static double getFlushIntervalSeconds() {
+        return snapshot.flushIntervalSeconds();
     }
 
     /**
@@ -241,6 +613,12 @@ public class ManaConfig {
         Mana.LOGGER.info(sb.toString());
     }
 
+    /**
+     * A listener registered for a key or key prefix.
+     */
+    private record Subscription(String pattern, ManaConfigListener listener) {
+    }
+
     /**
      * Configuration entry holder.
      */
@@ -274,7 +652,7 @@ public class ManaConfig {
      * @param enabled Whether overlay should be enabled
      */
     public static void setOverlayEnabled(boolean enabled) {
-        configData.put("overlay.enabled", enabled);
+        update("overlay.enabled", enabled);
     }
 
     /**
@@ -284,7 +662,7 @@ public class ManaConfig {
      */
     public static void setOverlayScale(double scale) {
         if (scale >= 0.5 && scale <= 2.0) {
-            configData.put("overlay.scale", scale);
+            update("overlay.scale", scale);
         }
     }
 
@@ -294,7 +672,7 @@ public class ManaConfig {
      * @param offset The horizontal offset in pixels
      */
     public static void setOverlayXOffset(int offset) {
-        configData.put("overlay.xOffset", offset);
+        update("overlay.xOffset", offset);
     }
 
     /**
@@ -303,7 +681,7 @@ public class ManaConfig {
      * @param offset The vertical offset in pixels
      */
     public static void setOverlayYOffset(int offset) {
-        configData.put("overlay.yOffset", offset);
+        update("overlay.yOffset", offset);
     }
 
     /**
@@ -313,7 +691,7 @@ public class ManaConfig {
      */
     public static void setOverlayTransparency(double transparency) {
         if (transparency >= 0.0 && transparency <= 1.0) {
-            configData.put("overlay.transparency", transparency);
+            update("overlay.transparency", transparency);
         }
     }
 
@@ -323,7 +701,7 @@ public class ManaConfig {
      * @param enabled Whether mana bars should be displayed
      */
     public static void setManaBarEnabled(boolean enabled) {
-        configData.put("render.hud.manaBar.enabled", enabled);
+        update("render.hud.manaBar.enabled", enabled);
     }
 
     /**
@@ -333,7 +711,7 @@ public class ManaConfig {
      */
     public static void setSpellManaCostMultiplier(double multiplier) {
         if (multiplier >= 0.0) {
-            configData.put("magic.spell.manaCost.multiplier", multiplier);
+            update("magic.spell.manaCost.multiplier", multiplier);
         }
     }
 
@@ -344,7 +722,36 @@ public class ManaConfig {
      */
     public static void setRitualDifficultyMultiplier(double multiplier) {
         if (multiplier >= 0.0) {
-            configData.put("magic.ritual.difficulty.multiplier", multiplier);
+            update("magic.ritual.difficulty.multiplier", multiplier);
+        }
+    }
+
+    /**
+     * Sets lazy regeneration state.
+     *
+     * @param enabled Whether regeneration is derived on access instead of ticked per player
+     */
+    public static void setLazyRegenEnabled(boolean enabled) {
+        update("magic.regen.lazy", enabled);
+    }
+
+    /**
+     * Sets write-behind persistence state. Takes effect on the next server start.
+     *
+     * @param enabled Whether player mana is persisted by the write-behind store
+     */
+    public static void setWriteBehindEnabled(boolean enabled) {
+        update("persistence.writeBehind.enabled", enabled);
+    }
+
+    /**
+     * Sets the write-behind flush interval.
+     *
+     * @param seconds Seconds between flushes (0.5-60.0)
+     */
+    public static void setFlushIntervalSeconds(double seconds) {
+        if (seconds >= 0.5 && seconds <= 60.0) {
+            update("persistence.flush.intervalSeconds", seconds);
         }
     }
 }
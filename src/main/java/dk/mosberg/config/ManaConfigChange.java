@@ -0,0 +1,39 @@
+package dk.mosberg.config;
+
+import java.util.Set;
+
+/**
+ * A coalesced configuration change. One change covers everything published in a single swap, so
+ * a reload or batch that touches several keys is delivered as one event.
+ *
+ * @param previous The snapshot before the change
+ * @param current The snapshot after the change
+ * @param changedKeys The keys whose compiled values differ between the two snapshots
+ */
+public record ManaConfigChange(ManaConfigSnapshot previous, ManaConfigSnapshot current,
+        Set<String> changedKeys) {
+
+    /**
+     * Checks whether this change touches a key or key prefix. Patterns are an exact key such as
+     * {@code overlay.scale}, a prefix ending in {@code .*} such as {@code overlay.*}, or {@code *}
+     * for every key.
+     *
+     * @param pattern The key or prefix pattern
+     * @return Whether any changed key matches
+     */
+    public boolean affects(String pattern) {
+        if ("*".equals(pattern)) {
+            return !changedKeys.isEmpty();
+        }
+        if (pattern.endsWith(".*")) {
+            String prefix = pattern.substring(0, pattern.length() - 1);
+            for (String key : changedKeys) {
+                if (key.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return changedKeys.contains(pattern);
+    }
+}
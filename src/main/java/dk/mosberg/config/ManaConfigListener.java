@@ -0,0 +1,21 @@
+package dk.mosberg.config;
+
+/**
+ * Receives configuration changes for the keys it subscribed to through
+ * {@link ManaConfig#subscribe(String, ManaConfigListener)}.
+ *
+ * <p>
+ * Listeners run on the thread that published the change, which is the background reload thread
+ * for hot reloads. Keep them short and thread-safe, e.g. mark cached state dirty and recompute it
+ * on the thread that uses it.
+ */
+@FunctionalInterface
+public interface ManaConfigListener {
+
+    /**
+     * Called once per published change that touches a subscribed key.
+     *
+     * @param change The coalesced change
+     */
+    void onConfigChanged(ManaConfigChange change);
+}
@@ -0,0 +1,25 @@
+package dk.mosberg.config;
+
+/**
+ * Immutable, primitive-typed view of the mana configuration. Compiled from the raw key/value data
+ * whenever it changes and published by {@link ManaConfig} through a single volatile reference, so
+ * hot paths read plain final fields and every field of one snapshot comes from the same version.
+ *
+ * @param overlayEnabled Whether the mana HUD overlay is shown
+ * @param overlayScale Scale of the mana overlay
+ * @param overlayXOffset Horizontal offset of the overlay in pixels
+ * @param overlayYOffset Vertical offset of the overlay in pixels
+ * @param overlayTransparency Opacity of the overlay (0.0-1.0)
+ * @param spellManaCostMultiplier Multiplier applied to spell mana costs
+ * @param ritualDifficultyMultiplier Multiplier applied to ritual difficulty
+ * @param manaBarEnabled Whether the individual mana bars are drawn
+ * @param lazyRegenEnabled Whether regeneration is derived on access instead of ticked
+ * @param writeBehindEnabled Whether player mana is persisted by the write-behind store
+ * @param flushIntervalSeconds Seconds between write-behind flushes, the most mana changes a crash
+ *        can lose
+ */
+public record ManaConfigSnapshot(boolean overlayEnabled, double overlayScale, int overlayXOffset,
+        int overlayYOffset, double overlayTransparency, double spellManaCostMultiplier,
+        double ritualDifficultyMultiplier, boolean manaBarEnabled, boolean lazyRegenEnabled,
+        boolean writeBehindEnabled, double flushIntervalSeconds) {
+}
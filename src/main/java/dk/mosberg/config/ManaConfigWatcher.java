@@ -0,0 +1,133 @@
+package dk.mosberg.config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import dk.mosberg.Mana;
+
+/**
+ * Watches the config directory and hot-reloads {@code mana.json} when it changes. Bursts of file
+ * events (editors often write a file several times per save) are debounced, and reading, parsing
+ * and validation happen on a background thread. A new configuration is only published when it
+ * validates; otherwise the current one stays live and the issues are logged.
+ */
+public final class ManaConfigWatcher {
+    private static final long DEBOUNCE_MILLIS = 250;
+
+    // Reloads are serialized on one thread so a watch event and a command never race
+    private static final ExecutorService RELOAD_EXECUTOR = Executors.newSingleThreadExecutor(
+            runnable -> daemon(runnable, "Mana Config Reload"));
+
+    private static WatchService watchService;
+    private static Thread watchThread;
+
+    private ManaConfigWatcher() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Starts watching the config directory. Does nothing if the watcher is already running.
+     */
+    public static synchronized void start() {
+        if (watchThread != null) {
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            ManaConfig.getConfigDir().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            Mana.LOGGER.error("Failed to watch configuration directory, hot reload disabled", e);
+            return;
+        }
+
+        watchThread = daemon(ManaConfigWatcher::watch, "Mana Config Watcher");
+        watchThread.start();
+    }
+
+    /**
+     * Schedules a reload of the config file on the reload thread.
+     *
+     * @return A future completing with validation issues, empty if the reload was applied
+     */
+    static CompletableFuture<List<String>> reload() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return ManaConfig.reloadFromDisk();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e.getMessage(), e);
+            }
+        }, RELOAD_EXECUTOR);
+    }
+
+    private static void watch() {
+        WatchService service = watchService;
+        Path fileName = ManaConfig.getConfigFile().getFileName();
+
+        try {
+            while (true) {
+                if (!drain(service.take(), fileName)) {
+                    continue;
+                }
+
+                // Wait until the file has been quiet for the debounce window
+                WatchKey next;
+                while ((next = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    drain(next, fileName);
+                }
+
+                reload().whenComplete((issues, error) -> {
+                    if (error != null) {
+                        Mana.LOGGER.warn("Ignoring unreadable configuration change: {}",
+                                error.getCause() != null ? error.getCause().getMessage()
+                                        : error.getMessage());
+                    } else if (!issues.isEmpty()) {
+                        Mana.LOGGER.warn("Ignoring invalid configuration change: {}",
+                                String.join("; ", issues));
+                    } else {
+                        Mana.LOGGER.info("Configuration reloaded from {}", fileName);
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            Mana.LOGGER.warn("Configuration watcher closed, hot reload disabled");
+        }
+    }
+
+    /**
+     * Consumes a key's pending events and re-arms it.
+     *
+     * @return Whether any event concerned the config file
+     */
+    private static boolean drain(WatchKey key, Path fileName) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || fileName.equals(event.context())) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,85 @@
+package dk.mosberg.mana;
+
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.Mana;
+import net.fabricmc.fabric.api.attachment.v1.AttachmentRegistry;
+import net.fabricmc.fabric.api.attachment.v1.AttachmentType;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+/**
+ * Data attachments that persist mana with the player entity. The attachment is saved with the
+ * player data and copied to the new entity on respawn. When {@link ManaWriteBehind} persists mana
+ * instead, the attachment is only read once to migrate existing data and then removed.
+ */
+public final class ManaAttachments {
+
+    public static final AttachmentType<PersistentManaData> MANA = AttachmentRegistry.create(
+            Mana.id("mana"), builder -> builder.persistent(PersistentManaData.CODEC).copyOnDeath());
+
+    private ManaAttachments() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Registers the attachment types. Must run during mod initialization, before any player data
+     * is loaded.
+     */
+    public static void register() {
+        Mana.LOGGER.debug("Registered mana attachment {}", MANA.identifier());
+    }
+
+    /**
+     * Restores the mana persisted on a player entity into a newly created pool.
+     *
+     * @param player The player
+     * @param pool The player's new pool
+     * @return true if the player had persisted mana
+     */
+    static boolean restore(@NotNull ServerPlayerEntity player, @NotNull ManaPool pool) {
+        PersistentManaData data = player.getAttached(MANA);
+        return data != null && data.restoreInto(pool);
+    }
+
+    /**
+     * Binds a player's mana attachment to their live pool, creating the attachment if the player
+     * has none.
+     *
+     * @param player The player
+     * @param pool The player's live pool
+     */
+    static void bind(@NotNull ServerPlayerEntity player, @NotNull ManaPool pool) {
+        PersistentManaData data = player.getAttached(MANA);
+        if (data == null) {
+            player.setAttached(MANA, new PersistentManaData(pool));
+        } else {
+            data.bind(pool);
+        }
+    }
+
+    /**
+     * Marks the pools of online players clean once the server saved their player data. Called
+     * after every server save, which writes player data before it completes.
+     *
+     * @param server The server
+     */
+    public static void confirmSaved(@NotNull MinecraftServer server) {
+        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+            PersistentManaData data = player.getAttached(MANA);
+            if (data != null) {
+                data.confirmSaved();
+            }
+        }
+    }
+
+    /**
+     * Removes a player's mana attachment, used when another store persists their mana.
+     *
+     * @param player The player
+     */
+    static void remove(@NotNull ServerPlayerEntity player) {
+        if (player.hasAttached(MANA)) {
+            player.removeAttached(MANA);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package dk.mosberg.mana;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import net.fabricmc.fabric.api.event.Event;
+import net.fabricmc.fabric.api.event.EventFactory;
+
+/**
+ * Events fired when a {@link ManaPool}'s current mana or effective max changes, so achievements,
+ * logging or custom HUDs can react without polling every tick.
+ *
+ * <p>
+ * Every mutation reports each pool whose value it changed. Regeneration is computed lazily and is
+ * only reported where it is materialized: by {@link ManaPool#tick()}, {@link ManaPoolStore#tick()}
+ * and by every mutation, which folds in the regeneration since the pool was last materialized.
+ * The old value is always the value last materialized, so each change starts where the previous
+ * one ended. A {@link ManaTransaction} reports the net change of each pool it touched once it
+ * committed, and nothing if it rolled back.
+ *
+ * <p>
+ * With lazy regeneration ({@code magic.regen.lazy}, the default) nothing ticks the pools, so a
+ * pool that only regenerates fires no event until its next mutation, which then reports the
+ * regenerated mana along with its own change. Listeners that must see regeneration as it happens,
+ * such as a HUD reacting to a pool refilling, need lazy regeneration disabled, which ticks every
+ * regenerating pool each server tick.
+ *
+ * <p>
+ * Listeners run on the thread that made the change, after the pool's lock was released, so they
+ * may read and mutate pools. Arguments are primitives and the values are recorded in reused
+ * per-thread buffers, so firing allocates nothing. While no listener is registered, mutations
+ * skip recording entirely.
+ *
+ * <pre>{@code
+ * ManaChangeEvents.MANA_CHANGED.register((pool, poolIndex, oldValue, newValue) -> {
+ *     if (poolIndex == ManaPoolType.TERTIARY.ordinal() && newValue <= 0) {
+ *         // Tertiary pool ran dry
+ *     }
+ * });
+ * }</pre>
+ */
+public final class ManaChangeEvents {
+
+    /** Frame index of a change nobody listens to. */
+    static final int NO_FRAME = -1;
+
+    private static final ManaChanged NO_MANA_LISTENERS = (pool, poolIndex, oldValue, newValue) -> {
+    };
+    private static final MaxChanged NO_MAX_LISTENERS = (pool, poolIndex, oldMax, newMax) -> {
+    };
+
+    /**
+     * Fired when a pool's current mana changes.
+     */
+    public static final Event<ManaChanged> MANA_CHANGED = EventFactory.createArrayBacked(
+            ManaChanged.class, NO_MANA_LISTENERS,
+            listeners -> (pool, poolIndex, oldValue, newValue) -> {
+                for (ManaChanged listener : listeners) {
+                    listener.onManaChanged(pool, poolIndex, oldValue, newValue);
+                }
+            });
+
+    /**
+     * Fired when a pool's effective max (pool value plus modifier) changes.
+     */
+    public static final Event<MaxChanged> MAX_CHANGED = EventFactory.createArrayBacked(
+            MaxChanged.class, NO_MAX_LISTENERS,
+            listeners -> (pool, poolIndex, oldMax, newMax) -> {
+                for (MaxChanged listener : listeners) {
+                    listener.onMaxChanged(pool, poolIndex, oldMax, newMax);
+                }
+            });
+
+    private static final ThreadLocal<Frames> FRAMES = ThreadLocal.withInitial(Frames::new);
+
+    private ManaChangeEvents() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    @FunctionalInterface
+    public interface ManaChanged {
+        /**
+         * @param pool The pool that changed
+         * @param poolIndex The {@link ManaPool.ManaPoolType} ordinal of the changed pool
+         * @param oldValue The mana before the change
+         * @param newValue The mana after the change
+         */
+        void onManaChanged(@NotNull ManaPool pool, int poolIndex, double oldValue,
+                double newValue);
+    }
+
+    @FunctionalInterface
+    public interface MaxChanged {
+        /**
+         * @param pool The pool that changed
+         * @param poolIndex The {@link ManaPool.ManaPoolType} ordinal of the changed pool
+         * @param oldMax The effective max before the change
+         * @param newMax The effective max after the change
+         */
+        void onMaxChanged(@NotNull ManaPool pool, int poolIndex, double oldMax, double newMax);
+    }
+
+    /**
+     * Checks whether any listener is registered. Listeners cannot be removed, and with none the
+     * events' invokers are the no-op ones, so this is two reads.
+     */
+    static boolean hasListeners() {
+        return MANA_CHANGED.invoker() != NO_MANA_LISTENERS
+                || MAX_CHANGED.invoker() != NO_MAX_LISTENERS;
+    }
+
+    // ==================== RECORDING ====================
+    // A mutation records the slot's values before and after the change while holding the slot's
+    // write lock, and fires once it released it.
+
+    /**
+     * Records a slot's values before a change. The caller holds the slot's write lock.
+     *
+     * @return The frame for {@link #after} and {@link #fire}, or {@link #NO_FRAME} if nobody
+     *         listens
+     */
+    static int before(@NotNull ManaPool pool, @NotNull ManaPoolStore store, int slot) {
+        if (!hasListeners()) {
+            return NO_FRAME;
+        }
+        return FRAMES.get().push(pool, store, slot);
+    }
+
+    /**
+     * Records a slot's values after a change. The caller still holds the slot's write lock.
+     */
+    static void after(int frame, @NotNull ManaPoolStore store, int slot) {
+        if (frame != NO_FRAME) {
+            FRAMES.get().capture(frame, Frames.AFTER, store, slot);
+        }
+    }
+
+    /**
+     * Fires the differences recorded in a frame and every frame recorded after it on this thread,
+     * then discards them. Called after the write lock was released.
+     */
+    static void fire(int frame) {
+        if (frame != NO_FRAME) {
+            FRAMES.get().fire(frame);
+        }
+    }
+
+    /**
+     * Per-thread stack of recorded changes. Listeners that mutate pools push frames above the ones
+     * being fired and pop them before returning, so nesting is safe.
+     */
+    private static final class Frames {
+        // Per frame: mana and max of each pool before, then after
+        private static final int BEFORE = 0;
+        private static final int AFTER = ManaPoolStore.POOLS * 2;
+        private static final int FRAME_SIZE = AFTER * 2;
+
+        private ManaPool[] pools = new ManaPool[8];
+        private double[] values = new double[8 * FRAME_SIZE];
+        private int depth;
+
+        int push(ManaPool pool, ManaPoolStore store, int slot) {
+            if (depth == pools.length) {
+                pools = Arrays.copyOf(pools, depth * 2);
+                values = Arrays.copyOf(values, depth * 2 * FRAME_SIZE);
+            }
+            pools[depth] = pool;
+            capture(depth, BEFORE, store, slot);
+            // Until after() runs the frame reports no change
+            capture(depth, AFTER, store, slot);
+            return depth++;
+        }
+
+        void capture(int frame, int offset, ManaPoolStore store, int slot) {
+            int base = frame * FRAME_SIZE + offset;
+            for (int pool = 0; pool < ManaPoolStore.POOLS; pool++) {
+                values[base + pool] = store.mana[slot * ManaPoolStore.POOLS + pool];
+                values[base + ManaPoolStore.POOLS + pool] = store.max(slot, pool);
+            }
+        }
+
+        void fire(int from) {
+            int to = depth;
+            try {
+                for (int frame = from; frame < to; frame++) {
+                    fireFrame(frame);
+                }
+            } finally {
+                Arrays.fill(pools, from, to, null);
+                depth = from;
+            }
+        }
+
+        private void fireFrame(int frame) {
+            ManaPool pool = pools[frame];
+            int base = frame * FRAME_SIZE;
+            for (int index = 0; index < ManaPoolStore.POOLS; index++) {
+                // Nested pushes may grow the array, so re-read it after every listener
+                double oldValue = values[base + BEFORE + index];
+                double newValue = values[base + AFTER + index];
+                if (oldValue != newValue) {
+                    MANA_CHANGED.invoker().onManaChanged(pool, index, oldValue, newValue);
+                }
+
+                double oldMax = values[base + BEFORE + ManaPoolStore.POOLS + index];
+                double newMax = values[base + AFTER + ManaPoolStore.POOLS + index];
+                if (oldMax != newMax) {
+                    MAX_CHANGED.invoker().onMaxChanged(pool, index, oldMax, newMax);
+                }
+            }
+        }
+    }
+}
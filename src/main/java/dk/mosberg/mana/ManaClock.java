@@ -0,0 +1,31 @@
+package dk.mosberg.mana;
+
+/**
+ * Monotonic server tick counter used as the time base for mana regeneration. Pools remember the
+ * tick they were last updated at and derive their current mana from the elapsed ticks, so only
+ * this counter has to advance every tick.
+ */
+public final class ManaClock {
+
+    private static volatile long currentTick;
+
+    private ManaClock() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Gets the current tick.
+     *
+     * @return The number of ticks advanced since the clock was loaded
+     */
+    public static long now() {
+        return currentTick;
+    }
+
+    /**
+     * Advances the clock by one tick. Called once per server tick from the server thread.
+     */
+    public static void advance() {
+        currentTick = currentTick + 1;
+    }
+}
@@ -1,23 +1,39 @@
 // ManaComponent.java - FIXED
 package dk.mosberg.mana;
 
+import java.util.UUID;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 
 /**
  * Attaches mana pool data to players. Handles ticking and NBT serialization.
+ *
+ * <p>
+ * A component outlives the entities of its player: respawning replaces the entity, and the
+ * component stays around for a grace period after a disconnect. It therefore only keeps the
+ * player's UUID and resolves the current entity on demand.
  */
 public class ManaComponent {
 
     private final ManaPool manaPool;
-    private final PlayerEntity player;
+    private final UUID playerId;
 
     public ManaComponent(@NotNull PlayerEntity player) {
-        this.player = player;
-        this.manaPool = new ManaPool();
+        this(player.getUuid());
+    }
+
+    /**
+     * Creates a component for a player by UUID (live players, benchmarks, simulations, tooling).
+     *
+     * @param playerId The owning player's UUID
+     */
+    public ManaComponent(@NotNull UUID playerId) {
+        this.playerId = playerId;
+        this.manaPool = new ManaPool(ManaComponents.store());
     }
 
     /**
@@ -31,20 +47,31 @@ public class ManaComponent {
     }
 
     /**
-     * Gets the player entity.
+     * Gets the owning player's UUID.
      *
-     * @return The player
+     * @return The player UUID
      */
     @NotNull
-    public PlayerEntity getPlayer() {
-        return player;
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    /**
+     * Gets the player's current entity.
+     *
+     * @param server The server to look the player up on
+     * @return The player, or null if the player is not online
+     */
+    @Nullable
+    public ServerPlayerEntity getPlayer(@NotNull MinecraftServer server) {
+        return server.getPlayerManager().getPlayer(playerId);
     }
 
     /**
      * Ticks the mana pool for regeneration.
      */
     public void tick() {
-        manaPool.tick(player);
+        manaPool.tick();
     }
 
     /**
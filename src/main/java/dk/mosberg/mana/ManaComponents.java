@@ -1,6 +1,8 @@
 // ManaComponents.java - IMPROVED
 package dk.mosberg.mana;
 
+import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -10,25 +12,100 @@ import net.minecraft.server.network.ServerPlayerEntity;
 
 /**
  * Manager for attaching ManaComponent to players. Uses UUID-based storage for proper persistence
- * with thread-safe concurrent access.
+ * with thread-safe concurrent access. Player mana is saved with the player entity through
+ * {@link ManaAttachments}.
+ *
+ * <p>
+ * Component pools live in a shared {@link ManaPoolStore}. Pools that are regenerating and below max
+ * are tracked in the store's active list, maintained by {@link ManaPool} mutations, so per-tick
+ * regeneration only visits players that actually regenerate.
+ *
+ * <p>
+ * Components follow the player lifecycle: they are created on join, rebound on respawn, persisted
+ * on disconnect and evicted once the player has been gone for a grace period, so a quick reconnect
+ * keeps the live pool while the map stays bounded by the players actually online.
  */
 public final class ManaComponents {
 
+    // Departed players stay loaded this long, and at most this many at once
+    private static final long EVICTION_GRACE_TICKS = 60L * 20;
+    private static final int MAX_DEPARTED = 1024;
+
     private static final Map<UUID, ManaComponent> MANA_COMPONENTS = new ConcurrentHashMap<>();
+    private static final ManaPoolStore STORE = new ManaPoolStore(64);
+
+    // Departure tick per departed player. The queue is in departure order, which is deadline order
+    // because the grace period is fixed; entries of players who rejoined are skipped when popped.
+    private static final Map<UUID, Long> DEPARTED = new ConcurrentHashMap<>();
+    private static final ArrayDeque<Departure> EVICTION_QUEUE = new ArrayDeque<>();
 
     private ManaComponents() {
         throw new UnsupportedOperationException("Utility class cannot be instantiated");
     }
 
     /**
-     * Gets or creates a ManaComponent for a player.
+     * Gets or creates a ManaComponent for a player. A newly created component restores the
+     * player's persisted mana and is bound to the entity; an existing one stays authoritative and
+     * is only looked up. New entities of a loaded player are bound by {@link #onJoin} and
+     * {@link #onRespawn}.
      *
      * @param player The player
      * @return The player's ManaComponent
      */
     @NotNull
     public static ManaComponent get(@NotNull ServerPlayerEntity player) {
-        return MANA_COMPONENTS.computeIfAbsent(player.getUuid(), uuid -> new ManaComponent(player));
+        ManaComponent component = MANA_COMPONENTS.get(player.getUuid());
+        if (component != null) {
+            return component;
+        }
+
+        return MANA_COMPONENTS.computeIfAbsent(player.getUuid(), uuid -> {
+            ManaComponent created = new ManaComponent(player);
+            restore(player, created.getManaPool());
+            bind(player, created.getManaPool());
+            return created;
+        });
+    }
+
+    /**
+     * Binds the live pool to the entity's attachment, or drops the attachment when
+     * {@link ManaWriteBehind} persists mana instead.
+     */
+    private static void bind(@NotNull ServerPlayerEntity player, @NotNull ManaPool pool) {
+        if (ManaWriteBehind.isRunning()) {
+            ManaAttachments.remove(player);
+        } else {
+            ManaAttachments.bind(player, pool);
+        }
+    }
+
+    /**
+     * Restores persisted mana into a new pool. A player attachment is only present when it is
+     * newer than the write-behind record, because the write-behind store removes it, so it wins.
+     */
+    private static void restore(@NotNull ServerPlayerEntity player, @NotNull ManaPool pool) {
+        if (ManaAttachments.restore(player, pool)) {
+            if (ManaWriteBehind.isRunning()) {
+                // Migrated from player data: persist it with the next flush
+                pool.markDirty();
+            }
+        } else {
+            ManaWriteBehind.restore(player.getUuid(), pool);
+        }
+    }
+
+    /**
+     * Gets or creates a ManaComponent by player UUID, for benchmarks and tests only. A component
+     * created here restores nothing and is not tracked for eviction, and a player joining later
+     * adopts it as live, so their persisted mana would be overwritten by its defaults. Callers
+     * looking up real players use {@link #getIfExists(UUID)}.
+     *
+     * @param playerId The player UUID
+     * @return The component
+     */
+    @NotNull
+    static ManaComponent getOrCreate(@NotNull UUID playerId) {
+        return MANA_COMPONENTS.computeIfAbsent(playerId, ManaComponent::new);
     }
 
     /**
@@ -39,7 +116,19 @@ public final class ManaComponents {
      */
     @Nullable
     public static ManaComponent getIfExists(@NotNull ServerPlayerEntity player) {
-        return MANA_COMPONENTS.get(player.getUuid());
+        return getIfExists(player.getUuid());
+    }
+
+    /**
+     * Gets a ManaComponent by player UUID if it is loaded, which includes players inside the
+     * disconnect grace period.
+     *
+     * @param playerId The player UUID
+     * @return The player's ManaComponent, or null if not loaded
+     */
+    @Nullable
+    public static ManaComponent getIfExists(@NotNull UUID playerId) {
+        return MANA_COMPONENTS.get(playerId);
     }
 
     /**
@@ -53,19 +142,140 @@ public final class ManaComponents {
     }
 
     /**
-     * Removes a player's ManaComponent. Should be called when player disconnects.
+     * Removes a player's ManaComponent immediately, persisting it first. Disconnects go through
+     * {@link #onDisconnect} instead, which keeps the component for a grace period.
      *
      * @param player The player
      */
     public static void remove(@NotNull ServerPlayerEntity player) {
-        MANA_COMPONENTS.remove(player.getUuid());
+        DEPARTED.remove(player.getUuid());
+        evict(player.getUuid());
+    }
+
+    private static void evict(@NotNull UUID playerId) {
+        ManaComponent component = MANA_COMPONENTS.remove(playerId);
+        if (component != null) {
+            ManaWriteBehind.flush(playerId, component.getManaPool());
+            component.getManaPool().detach();
+        }
     }
 
     /**
-     * Clears all stored components. Should be called on server shutdown.
+     * Clears all stored components. Should be called on server shutdown. Flushes pending mana to
+     * the write-behind store before the pools are released.
      */
     public static void clear() {
+        ManaWriteBehind.stop();
+        MANA_COMPONENTS.values().forEach(component -> component.getManaPool().detach());
         MANA_COMPONENTS.clear();
+        DEPARTED.clear();
+        EVICTION_QUEUE.clear();
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    /**
+     * Handles a player joining: restores their mana, or picks the live component back up when
+     * they return within the disconnect grace period.
+     *
+     * @param player The joining player
+     */
+    public static void onJoin(@NotNull ServerPlayerEntity player) {
+        DEPARTED.remove(player.getUuid());
+        bind(player, get(player).getManaPool());
+    }
+
+    /**
+     * Handles a respawn. The component is keyed by UUID and survives the old entity; this binds
+     * the new entity's attachment to the live pool.
+     *
+     * @param player The new player entity
+     */
+    public static void onRespawn(@NotNull ServerPlayerEntity player) {
+        bind(player, get(player).getManaPool());
+    }
+
+    /**
+     * Handles a player leaving: persists their mana right away and schedules the component for
+     * eviction after the grace period. The player data save that follows the disconnect still
+     * encodes the bound pool.
+     *
+     * @param player The departing player
+     */
+    public static void onDisconnect(@NotNull ServerPlayerEntity player) {
+        UUID playerId = player.getUuid();
+        ManaComponent component = MANA_COMPONENTS.get(playerId);
+        if (component == null) {
+            return;
+        }
+
+        ManaWriteBehind.flush(playerId, component.getManaPool());
+        long now = ManaClock.now();
+        DEPARTED.put(playerId, now);
+        EVICTION_QUEUE.addLast(new Departure(playerId, now));
+    }
+
+    /**
+     * Evicts departed players whose grace period ran out, or the longest departed ones while more
+     * than the allowed number are waiting. Called once per server tick.
+     */
+    public static void evictDeparted() {
+        long now = ManaClock.now();
+        Departure head;
+        while ((head = EVICTION_QUEUE.peekFirst()) != null
+                && (now - head.departedAt() >= EVICTION_GRACE_TICKS
+                        || DEPARTED.size() > MAX_DEPARTED)) {
+            EVICTION_QUEUE.pollFirst();
+            if (DEPARTED.remove(head.playerId(), head.departedAt())) {
+                evict(head.playerId());
+            }
+        }
+    }
+
+    /**
+     * Gets the number of departed players still loaded.
+     *
+     * @return The departed player count
+     */
+    public static int departedCount() {
+        return DEPARTED.size();
+    }
+
+    /**
+     * Gets every live component.
+     *
+     * @return A live view of the components
+     */
+    @NotNull
+    static Collection<ManaComponent> all() {
+        return MANA_COMPONENTS.values();
+    }
+
+    /**
+     * Gets the shared store backing all component pools.
+     *
+     * @return The pool store
+     */
+    @NotNull
+    public static ManaPoolStore store() {
+        return STORE;
+    }
+
+    /**
+     * Regenerates every active pool in one pass over the shared store. Pools that fill up or stop
+     * regenerating leave the active list.
+     */
+    public static void tickActive() {
+        STORE.tick();
+    }
+
+    /**
+     * Gets the number of components currently regenerating.
+     *
+     * @return The active component count
+     */
+    public static int activeCount() {
+        return STORE.activeCount();
     }
 
     /**
@@ -76,4 +286,13 @@ public final class ManaComponents {
     public static int size() {
         return MANA_COMPONENTS.size();
     }
+
+    /**
+     * A disconnect awaiting eviction.
+     *
+     * @param playerId The departed player
+     * @param departedAt The {@link ManaClock} tick of the disconnect
+     */
+    private record Departure(@NotNull UUID playerId, long departedAt) {
+    }
 }
@@ -0,0 +1,172 @@
+package dk.mosberg.mana;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.jetbrains.annotations.NotNull;
+import net.minecraft.util.Identifier;
+
+/**
+ * Per-player cooldowns keyed by an {@link Identifier}, typically a spell. A cooldown is a timer on
+ * {@link ManaTimers}: checking it compares its expiry tick with {@link ManaClock}, and the wheel
+ * removes it when it expires, so no per-player list is ever scanned.
+ *
+ * <pre>{@code
+ * if (ManaCooldowns.tryStart(player.getUuid(), FIREBALL, 40)
+ *         && ManaPoolHelper.tryConsumeMana(player, 25.0)) {
+ *     castFireball(player);
+ * }
+ * }</pre>
+ *
+ * <p>
+ * All methods are thread-safe. Cooldowns outlive disconnects until they expire, so leaving does
+ * not reset them, and are forgotten on server shutdown.
+ */
+public final class ManaCooldowns {
+
+    private static final Map<UUID, Map<Identifier, ManaTimerWheel.Timer>> COOLDOWNS =
+            new HashMap<>();
+
+    private ManaCooldowns() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Starts a cooldown, replacing one already running for the same key.
+     *
+     * @param playerId The player UUID
+     * @param key The cooldown key
+     * @param durationTicks The cooldown length in ticks
+     */
+    public static synchronized void start(@NotNull UUID playerId, @NotNull Identifier key,
+            long durationTicks) {
+        Map<Identifier, ManaTimerWheel.Timer> cooldowns =
+                COOLDOWNS.computeIfAbsent(playerId, id -> new HashMap<>());
+        Expiry expiry = new Expiry(playerId, key);
+        // Set before the lock is released, so the expiry cannot run without its timer
+        expiry.timer = ManaTimers.schedule(durationTicks, expiry);
+        ManaTimerWheel.Timer previous = cooldowns.put(key, expiry.timer);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Starts a cooldown unless one is running for the key.
+     *
+     * @param playerId The player UUID
+     * @param key The cooldown key
+     * @param durationTicks The cooldown length in ticks
+     * @return true if the cooldown was started, false if it was still running
+     */
+    public static synchronized boolean tryStart(@NotNull UUID playerId, @NotNull Identifier key,
+            long durationTicks) {
+        if (isOnCooldown(playerId, key)) {
+            return false;
+        }
+        start(playerId, key, durationTicks);
+        return true;
+    }
+
+    /**
+     * Checks whether a cooldown is running.
+     *
+     * @param playerId The player UUID
+     * @param key The cooldown key
+     * @return true if the cooldown has not expired yet
+     */
+    public static synchronized boolean isOnCooldown(@NotNull UUID playerId,
+            @NotNull Identifier key) {
+        return getRemaining(playerId, key) > 0;
+    }
+
+    /**
+     * Gets the ticks left on a cooldown.
+     *
+     * @param playerId The player UUID
+     * @param key The cooldown key
+     * @return The remaining ticks, or 0 if the cooldown is not running
+     */
+    public static synchronized long getRemaining(@NotNull UUID playerId, @NotNull Identifier key) {
+        Map<Identifier, ManaTimerWheel.Timer> cooldowns = COOLDOWNS.get(playerId);
+        ManaTimerWheel.Timer timer = cooldowns != null ? cooldowns.get(key) : null;
+        return timer != null ? Math.max(0, timer.getExpiryTick() - ManaClock.now()) : 0;
+    }
+
+    /**
+     * Ends a cooldown early.
+     *
+     * @param playerId The player UUID
+     * @param key The cooldown key
+     */
+    public static synchronized void reset(@NotNull UUID playerId, @NotNull Identifier key) {
+        Map<Identifier, ManaTimerWheel.Timer> cooldowns = COOLDOWNS.get(playerId);
+        if (cooldowns == null) {
+            return;
+        }
+
+        ManaTimerWheel.Timer timer = cooldowns.remove(key);
+        if (timer != null) {
+            timer.cancel();
+        }
+        if (cooldowns.isEmpty()) {
+            COOLDOWNS.remove(playerId);
+        }
+    }
+
+    /**
+     * Ends every cooldown of a player early.
+     *
+     * @param playerId The player UUID
+     */
+    public static synchronized void resetAll(@NotNull UUID playerId) {
+        Map<Identifier, ManaTimerWheel.Timer> cooldowns = COOLDOWNS.remove(playerId);
+        if (cooldowns != null) {
+            cooldowns.values().forEach(ManaTimerWheel.Timer::cancel);
+        }
+    }
+
+    /**
+     * Forgets every cooldown. The timers are cancelled by the caller.
+     */
+    static synchronized void clear() {
+        COOLDOWNS.clear();
+    }
+
+    /**
+     * Drops a cooldown when its timer runs, unless it was restarted since. A restart within the
+     * same tick can expire at the same tick, so the timer itself is compared, not its expiry.
+     */
+    private static synchronized void expire(Expiry expiry) {
+        Map<Identifier, ManaTimerWheel.Timer> cooldowns = COOLDOWNS.get(expiry.playerId);
+        if (cooldowns == null) {
+            return;
+        }
+
+        if (cooldowns.get(expiry.key) == expiry.timer) {
+            cooldowns.remove(expiry.key);
+            if (cooldowns.isEmpty()) {
+                COOLDOWNS.remove(expiry.playerId);
+            }
+        }
+    }
+
+    /**
+     * The action of a cooldown's timer, which knows the timer it belongs to.
+     */
+    private static final class Expiry implements Runnable {
+        final UUID playerId;
+        final Identifier key;
+        ManaTimerWheel.Timer timer;
+
+        Expiry(UUID playerId, Identifier key) {
+            this.playerId = playerId;
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            expire(this);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package dk.mosberg.mana;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import dk.mosberg.mana.ManaPool.ModifierOperation;
+import net.minecraft.util.Identifier;
+
+/**
+ * The source-keyed max modifiers of one {@link ManaPool}, as parallel arrays in the order they were
+ * added. Each entry modifies one pool, so a source modifying several pools has one entry per pool.
+ * Entries without a source are the timed modifiers of
+ * {@link ManaPool#applyMaxModifier(ManaPool.ManaPoolType, double, long)} and are only found by id.
+ *
+ * <p>
+ * A pool carries a handful of modifiers, so lookups scan and the aggregates are summed over the
+ * entries of one pool when it changes; summing afresh rather than adding and subtracting deltas
+ * keeps a pool whose modifiers were all removed at exactly its pool value.
+ *
+ * <p>
+ * Not thread-safe: the owning pool only changes it under its slot's write lock, and reads it
+ * optimistically through {@link #find}.
+ */
+final class ManaModifiers {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private Identifier[] sources = new Identifier[INITIAL_CAPACITY];
+    private int[] pools = new int[INITIAL_CAPACITY];
+    private ModifierOperation[] operations = new ModifierOperation[INITIAL_CAPACITY];
+    private double[] amounts = new double[INITIAL_CAPACITY];
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private ManaTimerWheel.Timer[] timers = new ManaTimerWheel.Timer[INITIAL_CAPACITY];
+    private int size;
+    private long nextId;
+
+    /**
+     * Finds the entry of a source on a pool.
+     *
+     * @return The entry index, or -1
+     */
+    int indexOf(@NotNull Identifier source, int pool) {
+        for (int i = 0; i < size; i++) {
+            if (pools[i] == pool && source.equals(sources[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the amount of a source's entry on a pool. Safe without the lock for an optimistic read:
+     * a torn view gives a wrong answer, which the caller's validation discards, but never throws.
+     *
+     * @return The amount, or NaN if the source has no entry on the pool
+     */
+    double find(@NotNull Identifier source, int pool) {
+        Identifier[] sources = this.sources;
+        int[] pools = this.pools;
+        double[] amounts = this.amounts;
+        int size = Math.min(this.size,
+                Math.min(sources.length, Math.min(pools.length, amounts.length)));
+        for (int i = 0; i < size; i++) {
+            if (pools[i] == pool && source.equals(sources[i])) {
+                return amounts[i];
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Finds an entry by id.
+     *
+     * @return The entry index, or -1 if it was removed
+     */
+    int indexOf(long id) {
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Appends an entry. The caller removed any entry of the same source on the pool first.
+     *
+     * @return The entry index
+     */
+    int add(@Nullable Identifier source, int pool, double amount,
+            @NotNull ModifierOperation operation) {
+        if (size == sources.length) {
+            int capacity = size * 2;
+            sources = Arrays.copyOf(sources, capacity);
+            pools = Arrays.copyOf(pools, capacity);
+            operations = Arrays.copyOf(operations, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+            timers = Arrays.copyOf(timers, capacity);
+        }
+
+        sources[size] = source;
+        pools[size] = pool;
+        operations[size] = operation;
+        amounts[size] = amount;
+        ids[size] = nextId++;
+        timers[size] = null;
+        return size++;
+    }
+
+    long id(int index) {
+        return ids[index];
+    }
+
+    int pool(int index) {
+        return pools[index];
+    }
+
+    /**
+     * Attaches the timer that removes an entry when it expires.
+     */
+    void setTimer(int index, @NotNull ManaTimerWheel.Timer timer) {
+        timers[index] = timer;
+    }
+
+    /**
+     * Removes an entry, cancelling its expiry timer.
+     *
+     * @return The pool the entry modified
+     */
+    int remove(int index) {
+        int pool = pools[index];
+        if (timers[index] != null) {
+            timers[index].cancel();
+        }
+
+        int moved = size - index - 1;
+        System.arraycopy(sources, index + 1, sources, index, moved);
+        System.arraycopy(pools, index + 1, pools, index, moved);
+        System.arraycopy(operations, index + 1, operations, index, moved);
+        System.arraycopy(amounts, index + 1, amounts, index, moved);
+        System.arraycopy(ids, index + 1, ids, index, moved);
+        System.arraycopy(timers, index + 1, timers, index, moved);
+        size--;
+        sources[size] = null;
+        operations[size] = null;
+        timers[size] = null;
+        return pool;
+    }
+
+    /**
+     * Removes every entry of a source.
+     *
+     * @return A mask of the pools that lost an entry
+     */
+    int removeAll(@NotNull Identifier source) {
+        int mask = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            if (source.equals(sources[i])) {
+                mask |= 1 << remove(i);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Removes every entry, cancelling their timers.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            if (timers[i] != null) {
+                timers[i].cancel();
+            }
+        }
+        Arrays.fill(sources, 0, size, null);
+        Arrays.fill(operations, 0, size, null);
+        Arrays.fill(timers, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Sums the amounts of one operation on a pool.
+     */
+    double sum(int pool, @NotNull ModifierOperation operation) {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            if (pools[i] == pool && operations[i] == operation) {
+                sum += amounts[i];
+            }
+        }
+        return sum;
+    }
+}
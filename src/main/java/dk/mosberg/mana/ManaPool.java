@@ -1,8 +1,11 @@
 package dk.mosberg.mana;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.StampedLock;
 import org.jetbrains.annotations.NotNull;
-import net.minecraft.entity.player.PlayerEntity;
+import org.jetbrains.annotations.Nullable;
 import net.minecraft.nbt.NbtCompound;
+import net.minecraft.util.Identifier;
 
 /**
  * Manages a player's three mana pools with automatic regeneration. Uses game ticks for
@@ -12,35 +15,61 @@ import net.minecraft.nbt.NbtCompound;
  * Pool Value System: Each pool has both current mana and a "pool value" which represents the
  * base/intrinsic capacity. Pool values can be increased through leveling, items, or other
  * progression mechanics, allowing for permanent mana pool expansion.
+ *
+ * <p>
+ * Regeneration is computed in closed form: the stored mana values are a snapshot taken at the
+ * slot's last-updated tick, and the current value is {@code min(max, stored + rate * elapsed)}
+ * measured against {@link ManaClock}. Getters are pure reads of that formula, and every mutation
+ * first settles the snapshot to the current tick, so a full or idle pool costs nothing per tick.
+ *
+ * <p>
+ * A ManaPool is a thin handle onto a slot of a {@link ManaPoolStore}. Player pools share the
+ * server-wide store owned by {@link ManaComponents}; pools created with the no-store constructors
+ * get a private single-slot store.
+ *
+ * <p>
+ * Pools are thread-safe, so dashboards, async spell systems and chat integrations can read and
+ * spend mana without hopping to the server thread. Every mutation is atomic under the write lock
+ * of the pool's slot in its store. Getters read optimistically and retry under the read lock only
+ * when a writer interfered, so they never see a torn state: a total or percentage is computed from one
+ * consistent snapshot. Getters called one after another are separate snapshots; use
+ * {@link ManaTransaction} to check and spend atomically.
  */
 public class ManaPool {
 
     // Default constants
-    private static final double REGEN_RATE_PRIMARY = 1.0;
-    private static final double REGEN_RATE_SECONDARY = 0.75;
-    private static final double REGEN_RATE_TERTIARY = 0.5;
-    private static final double DEFAULT_PRIMARY_POOL_VALUE = 250.0;
-    private static final double DEFAULT_SECONDARY_POOL_VALUE = 500.0;
-    private static final double DEFAULT_TERTIARY_POOL_VALUE = 1000.0;
+    public static final double REGEN_RATE_PRIMARY = 1.0;
+    public static final double REGEN_RATE_SECONDARY = 0.75;
+    public static final double REGEN_RATE_TERTIARY = 0.5;
+    static final double DEFAULT_PRIMARY_POOL_VALUE = 250.0;
+    static final double DEFAULT_SECONDARY_POOL_VALUE = 500.0;
+    static final double DEFAULT_TERTIARY_POOL_VALUE = 1000.0;
     private static final int TICKS_PER_SECOND = 20;
 
-    // Current mana in each pool
-    private double primaryMana;
-    private double secondaryMana;
-    private double tertiaryMana;
+    /** Mask selecting every pool, for the per-pool operations; see {@link ManaPoolType#mask()}. */
+    public static final int ALL_POOLS = (1 << ManaPoolStore.POOLS) - 1;
+    private static final ThreadLocal<ManaTransaction> SHARE =
+            ThreadLocal.withInitial(ManaTransaction::new);
+
+    /** Size of the compact binary record written by {@link #writeRecord(ByteBuffer)}. */
+    static final int RECORD_BYTES = ManaPoolStore.POOLS * 2 * Double.BYTES + 1;
+
+    // Pool indices within a store slot
+    private static final int PRIMARY = 0;
+    private static final int SECONDARY = 1;
+    private static final int TERTIARY = 2;
 
-    // Pool values (base capacity from progression/leveling)
-    private double primaryPoolValue;
-    private double secondaryPoolValue;
-    private double tertiaryPoolValue;
+    // Duration of a modifier that never expires
+    private static final long PERMANENT = -1;
 
-    // Temporary max modifiers (buffs, debuffs, equipment bonuses)
-    private double primaryMaxModifier;
-    private double secondaryMaxModifier;
-    private double tertiaryMaxModifier;
+    // Backing slot (moves when the pool is detached from a shared store). Written while holding
+    // every stripe of the old store; lockers re-check the store after locking.
+    private volatile ManaPoolStore store;
+    private int slot;
 
-    // Regeneration state
-    private boolean regenerating = true;
+    // Source-keyed max modifiers, created on first use. Guarded by the slot's lock; their
+    // aggregates live in the store. Volatile so an optimistic lookup never sees it half built.
+    private volatile ManaModifiers modifiers;
 
     /**
      * Creates a new ManaPool with default pool values.
@@ -57,92 +86,385 @@ public class ManaPool {
      * @param tertiaryPoolValue Base tertiary pool capacity
      */
     public ManaPool(double primaryPoolValue, double secondaryPoolValue, double tertiaryPoolValue) {
-        this.primaryPoolValue = Math.max(0, primaryPoolValue);
-        this.secondaryPoolValue = Math.max(0, secondaryPoolValue);
-        this.tertiaryPoolValue = Math.max(0, tertiaryPoolValue);
+        this(new ManaPoolStore(1), primaryPoolValue, secondaryPoolValue, tertiaryPoolValue);
+    }
 
-        // Initialize modifiers to zero
-        this.primaryMaxModifier = 0;
-        this.secondaryMaxModifier = 0;
-        this.tertiaryMaxModifier = 0;
+    /**
+     * Creates a new ManaPool with default pool values in a shared store.
+     *
+     * @param store The store holding this pool's state
+     */
+    public ManaPool(@NotNull ManaPoolStore store) {
+        this(store, DEFAULT_PRIMARY_POOL_VALUE, DEFAULT_SECONDARY_POOL_VALUE,
+                DEFAULT_TERTIARY_POOL_VALUE);
+    }
 
-        // Start with full mana
-        this.primaryMana = getPrimaryMax();
-        this.secondaryMana = getSecondaryMax();
-        this.tertiaryMana = getTertiaryMax();
+    /**
+     * Creates a new ManaPool with custom pool values in a shared store. Pools start full.
+     *
+     * @param store The store holding this pool's state
+     * @param primaryPoolValue Base primary pool capacity
+     * @param secondaryPoolValue Base secondary pool capacity
+     * @param tertiaryPoolValue Base tertiary pool capacity
+     */
+    public ManaPool(@NotNull ManaPoolStore store, double primaryPoolValue,
+            double secondaryPoolValue, double tertiaryPoolValue) {
+        this.store = store;
+        this.slot = store.allocate(this, primaryPoolValue, secondaryPoolValue,
+                tertiaryPoolValue);
+    }
+
+    /**
+     * Moves this pool's state out of its shared store into a private one and frees the shared
+     * slot. The handle stays valid, so references held elsewhere keep working.
+     */
+    void detach() {
+        ManaPoolStore standalone = new ManaPoolStore(1);
+        while (true) {
+            // Every stripe, so a reader holding a stale slot cannot validate after the move
+            ManaPoolStore shared = store;
+            shared.lockAll();
+            try {
+                if (shared == store) {
+                    slot = shared.transferTo(slot, standalone);
+                    store = standalone;
+                    return;
+                }
+            } finally {
+                shared.unlockAll();
+            }
+        }
+    }
+
+    /**
+     * Materializes regeneration up to the current {@link ManaClock} tick. Regeneration is derived
+     * lazily on every read and mutation, so calling this each tick is optional and only stores the
+     * already-observable values. Needs no player, so pools can be driven headlessly.
+     */
+    public void tick() {
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            store.updateActivity(slot);
+        } finally {
+            unlockWrite(stamp, frame);
+        }
     }
 
     /**
-     * Update mana regeneration based on game ticks. Called every tick from the server.
+     * Closed-form regeneration of a single pool over a number of ticks. Also used by the client to
+     * extrapolate synced mana, which is why fractional ticks are accepted.
      *
-     * @param player The player entity
+     * @param mana The stored mana
+     * @param max The pool maximum
+     * @param ratePerSecond The regeneration rate per second
+     * @param elapsedTicks The ticks elapsed since {@code mana} was stored
+     * @return The regenerated mana, never exceeding {@code max} unless already above it
      */
-    public void tick(@NotNull PlayerEntity player) {
-        if (!regenerating) {
-            return;
+    public static double regenerate(double mana, double max, double ratePerSecond,
+            double elapsedTicks) {
+        if (elapsedTicks <= 0 || mana >= max) {
+            return mana;
         }
+        return Math.min(max, mana + ratePerSecond * elapsedTicks / TICKS_PER_SECOND);
+    }
+
+    // ==================== LOCKING ====================
 
-        // Calculate regen per tick (divide by ticks per second)
-        double primaryRegenPerTick = REGEN_RATE_PRIMARY / TICKS_PER_SECOND;
-        double secondaryRegenPerTick = REGEN_RATE_SECONDARY / TICKS_PER_SECOND;
-        double tertiaryRegenPerTick = REGEN_RATE_TERTIARY / TICKS_PER_SECOND;
+    /**
+     * A read of slot state, evaluated by {@link #read}. Implementations are non-capturing, so
+     * passing one allocates nothing.
+     */
+    @FunctionalInterface
+    private interface SlotQuery {
+        double read(ManaPoolStore store, int slot, int pool);
+    }
 
-        // Regenerate each pool independently
-        if (primaryMana < getPrimaryMax()) {
-            primaryMana = Math.min(getPrimaryMax(), primaryMana + primaryRegenPerTick);
+    /**
+     * Evaluates a query against a consistent snapshot: optimistically first, and again under the
+     * read lock if a writer interfered. The store is re-checked after validating, since a detach
+     * that completed before the stamp was taken leaves the stale slot's lock untouched.
+     */
+    private double read(SlotQuery query, int pool) {
+        ManaPoolStore store = this.store;
+        int slot = this.slot;
+        StampedLock lock = store.lock(slot);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            double value = query.read(store, slot, pool);
+            if (lock.validate(stamp) && store == this.store) {
+                return value;
+            }
         }
 
-        if (secondaryMana < getSecondaryMax()) {
-            secondaryMana = Math.min(getSecondaryMax(), secondaryMana + secondaryRegenPerTick);
+        stamp = readLock();
+        try {
+            return query.read(this.store, this.slot, pool);
+        } finally {
+            unlockRead(stamp);
         }
+    }
 
-        if (tertiaryMana < getTertiaryMax()) {
-            tertiaryMana = Math.min(getTertiaryMax(), tertiaryMana + tertiaryRegenPerTick);
+    /**
+     * Acquires the read lock of this pool's slot, retrying if the pool was detached meanwhile.
+     *
+     * @return The stamp for {@link #unlockRead}
+     */
+    private long readLock() {
+        while (true) {
+            ManaPoolStore store = this.store;
+            int slot = this.slot;
+            StampedLock lock = store.lock(slot);
+            long stamp = lock.readLock();
+            if (store == this.store && slot == this.slot) {
+                return stamp;
+            }
+            lock.unlockRead(stamp);
         }
     }
 
+    private void unlockRead(long stamp) {
+        store.lock(slot).unlockRead(stamp);
+    }
+
     /**
-     * Consume mana from pools in priority order (primary → secondary → tertiary).
+     * Acquires the write lock of this pool's slot, retrying if the pool was detached meanwhile.
      *
-     * @param amount Amount of mana to consume
-     * @return true if mana was consumed, false if insufficient
+     * @return The stamp for {@link #unlockWrite}
      */
-    public boolean consumeMana(double amount) {
-        if (amount < 0) {
+    private long writeLock() {
+        while (true) {
+            ManaPoolStore store = this.store;
+            int slot = this.slot;
+            StampedLock lock = store.lock(slot);
+            long stamp = lock.writeLock();
+            if (store == this.store && slot == this.slot) {
+                return stamp;
+            }
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void unlockWrite(long stamp) {
+        store.lock(slot).unlockWrite(stamp);
+    }
+
+    /**
+     * Releases the write lock after a change recorded by {@link ManaChangeEvents#before}, then
+     * fires its events, outside the lock so listeners can use the pool.
+     */
+    private void unlockWrite(long stamp, int frame) {
+        ManaChangeEvents.after(frame, store, slot);
+        store.lock(slot).unlockWrite(stamp);
+        ManaChangeEvents.fire(frame);
+    }
+
+    /**
+     * Gets the store currently backing this pool, for {@link ManaTransaction} to lock.
+     */
+    @NotNull
+    ManaPoolStore store() {
+        return store;
+    }
+
+    /**
+     * Gets the slot currently backing this pool, for {@link ManaTransaction} to lock. Only stable
+     * while the slot's lock is held.
+     */
+    int slot() {
+        return slot;
+    }
+
+    // ==================== SLOT ACCESS ====================
+
+    private double stored(int pool) {
+        return store.mana[slot * ManaPoolStore.POOLS + pool];
+    }
+
+    private void store(int pool, double value) {
+        store.mana[slot * ManaPoolStore.POOLS + pool] = value;
+    }
+
+    private double poolValue(int pool) {
+        return store.poolValue[slot * ManaPoolStore.POOLS + pool];
+    }
+
+    /**
+     * Clamps a pool's stored mana to its max after the max changed.
+     */
+    private void clampToMax(int pool) {
+        store(pool, Math.min(stored(pool), store.max(slot, pool)));
+    }
+
+    /**
+     * Records a mutation: marks the slot dirty for persistence and changed for sync, and updates
+     * its active state.
+     */
+    private void changed() {
+        store.markDirty(slot);
+        store.markChanged(slot);
+        store.updateActivity(slot);
+    }
+
+    // ==================== RAW MUTATIONS ====================
+    // Operate on settled state and leave marking the change to the caller, so several can be
+    // combined into one mutation (see ManaTransaction). The caller holds the slot's write lock.
+
+    /**
+     * Folds pending regeneration into the stored values.
+     */
+    void settle() {
+        store.settle(slot);
+    }
+
+    /**
+     * Takes mana in priority order (primary → secondary → tertiary).
+     *
+     * @return false, changing nothing, if the pools hold less than the amount
+     */
+    boolean take(double amount) {
+        double total = stored(PRIMARY) + stored(SECONDARY) + stored(TERTIARY);
+        if (total < amount) {
             return false;
         }
 
-        if (getTotalMana() < amount) {
+        double remaining = amount;
+        for (int pool = PRIMARY; pool <= TERTIARY && remaining > 0; pool++) {
+            double taken = Math.min(stored(pool), remaining);
+            store(pool, stored(pool) - taken);
+            remaining -= taken;
+        }
+        return true;
+    }
+
+    /**
+     * Takes mana from one pool.
+     *
+     * @return false, changing nothing, if the pool holds less than the amount
+     */
+    boolean take(int pool, double amount) {
+        if (stored(pool) < amount) {
             return false;
         }
+        store(pool, stored(pool) - amount);
+        return true;
+    }
 
+    /**
+     * Gives mana in priority order (primary → secondary → tertiary); whatever does not fit is
+     * lost.
+     */
+    void give(double amount) {
         double remaining = amount;
+        for (int pool = PRIMARY; pool <= TERTIARY && remaining > 0; pool++) {
+            double space = store.max(slot, pool) - stored(pool);
+            if (space > 0) {
+                double toAdd = Math.min(remaining, space);
+                store(pool, stored(pool) + toAdd);
+                remaining -= toAdd;
+            }
+        }
+    }
 
-        // Try primary first
-        if (primaryMana >= remaining) {
-            primaryMana -= remaining;
-            return true;
-        } else {
-            remaining -= primaryMana;
-            primaryMana = 0;
+    /**
+     * Changes a pool value by a delta. Growth also adds the delta to current mana, as
+     * {@link #increasePoolValue} does; shrinking clamps current mana to the new max.
+     *
+     * @return false, changing nothing, if the pool value would become negative
+     */
+    boolean adjustPoolValue(int pool, double delta) {
+        double value = poolValue(pool) + delta;
+        if (value < 0) {
+            return false;
         }
 
-        // Then secondary
-        if (secondaryMana >= remaining) {
-            secondaryMana -= remaining;
-            return true;
+        store.setPoolValue(slot, pool, value);
+        if (delta > 0) {
+            store(pool, Math.min(stored(pool) + delta, store.max(slot, pool)));
         } else {
-            remaining -= secondaryMana;
-            secondaryMana = 0;
+            clampToMax(pool);
         }
+        return true;
+    }
 
-        // Finally tertiary
-        if (tertiaryMana >= remaining) {
-            tertiaryMana -= remaining;
-            return true;
+    /**
+     * Copies stored mana and pool values into a buffer, for {@link #restoreState}.
+     *
+     * @return The tick the stored mana was last settled at
+     */
+    long saveState(double[] buffer, int offset) {
+        for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+            buffer[offset + pool] = stored(pool);
+            buffer[offset + ManaPoolStore.POOLS + pool] = poolValue(pool);
+        }
+        return store.lastUpdateTick[slot];
+    }
+
+    /**
+     * Restores stored mana, pool values and the settled tick saved by {@link #saveState}, undoing
+     * a settle as well as raw mutations.
+     */
+    void restoreState(double[] buffer, int offset, long settledTick) {
+        for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+            store.setPoolValue(slot, pool, buffer[offset + ManaPoolStore.POOLS + pool]);
+            store(pool, buffer[offset + pool]);
+        }
+        store.lastUpdateTick[slot] = settledTick;
+    }
+
+    /**
+     * Records raw mutations as one change.
+     */
+    void commitChange() {
+        changed();
+    }
+
+    /**
+     * Records this pool's values before raw mutations, for {@link ManaChangeEvents}.
+     *
+     * @return The change frame, or {@link ManaChangeEvents#NO_FRAME} if nobody listens
+     */
+    int recordBefore() {
+        return ManaChangeEvents.before(this, store, slot);
+    }
+
+    /**
+     * Records this pool's values after raw mutations, completing a frame from
+     * {@link #recordBefore}.
+     */
+    void recordAfter(int frame) {
+        ManaChangeEvents.after(frame, store, slot);
+    }
+
+    // ==================== MUTATIONS ====================
+
+    /**
+     * Consume mana from pools in priority order (primary → secondary → tertiary).
+     *
+     * @param amount Amount of mana to consume
+     * @return true if mana was consumed, false if insufficient
+     */
+    public boolean consumeMana(double amount) {
+        if (amount < 0) {
+            return false;
         }
 
-        return false;
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            if (!take(amount)) {
+                return false;
+            }
+
+            changed();
+            return true;
+        } finally {
+            unlockWrite(stamp, frame);
+        }
     }
 
     /**
@@ -155,33 +477,147 @@ public class ManaPool {
             return;
         }
 
-        double remaining = amount;
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            give(amount);
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    // ==================== PER-POOL MUTATIONS ====================
+    // Each pool selected by a mask is changed on its own; other pools are never touched, and the
+    // whole call is one mutation.
+
+    /**
+     * Set the current mana of one pool, clamped to [0, max].
+     *
+     * @param type The pool type
+     * @param value The new mana
+     */
+    public void setMana(@NotNull ManaPoolType type, double value) {
+        setMana(type.mask(), value);
+    }
 
-        // Fill primary first
-        double primarySpace = getPrimaryMax() - primaryMana;
-        if (primarySpace > 0 && remaining > 0) {
-            double toAdd = Math.min(remaining, primarySpace);
-            primaryMana += toAdd;
-            remaining -= toAdd;
+    /**
+     * Set the current mana of every selected pool, each clamped to [0, its max].
+     *
+     * @param pools The pools, as a mask of {@link ManaPoolType#mask()} bits
+     * @param value The new mana
+     */
+    public void setMana(int pools, double value) {
+        if ((pools & ALL_POOLS) == 0 || Double.isNaN(value)) {
+            return;
         }
 
-        // Then secondary
-        if (remaining > 0) {
-            double secondarySpace = getSecondaryMax() - secondaryMana;
-            if (secondarySpace > 0) {
-                double toAdd = Math.min(remaining, secondarySpace);
-                secondaryMana += toAdd;
-                remaining -= toAdd;
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                if ((pools & 1 << pool) != 0) {
+                    store(pool, Math.max(0, Math.min(value, store.max(slot, pool))));
+                }
             }
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
         }
+    }
 
-        // Finally tertiary
-        if (remaining > 0) {
-            double tertiarySpace = getTertiaryMax() - tertiaryMana;
-            if (tertiarySpace > 0) {
-                double toAdd = Math.min(remaining, tertiarySpace);
-                tertiaryMana += toAdd;
+    /**
+     * Add mana to one pool, clamped to [0, max]. Negative amounts remove mana.
+     *
+     * @param type The pool type
+     * @param amount The amount to add
+     * @return The change actually applied
+     */
+    public double addMana(@NotNull ManaPoolType type, double amount) {
+        return addMana(type.mask(), amount);
+    }
+
+    /**
+     * Add mana to every selected pool, each clamped to [0, its max]. Negative amounts remove
+     * mana. Unlike {@link #restoreMana}, nothing spills into other pools.
+     *
+     * @param pools The pools, as a mask of {@link ManaPoolType#mask()} bits
+     * @param amount The amount to add to each pool
+     * @return The total change actually applied
+     */
+    public double addMana(int pools, double amount) {
+        if ((pools & ALL_POOLS) == 0 || amount == 0 || Double.isNaN(amount)) {
+            return 0;
+        }
+
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            double applied = 0;
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                if ((pools & 1 << pool) != 0) {
+                    double before = stored(pool);
+                    double max = Math.max(before, store.max(slot, pool));
+                    store(pool, Math.max(0, Math.min(before + amount, max)));
+                    applied += stored(pool) - before;
+                }
             }
+            changed();
+            return applied;
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    /**
+     * Consume mana from one pool only.
+     *
+     * @param type The pool type
+     * @param amount Amount of mana to consume
+     * @return true if mana was consumed, false if the pool holds too little
+     */
+    public boolean consumeMana(@NotNull ManaPoolType type, double amount) {
+        return consumeMana(type.mask(), amount);
+    }
+
+    /**
+     * Consume the same amount from every selected pool, all or nothing: if any selected pool
+     * holds too little, no pool is changed.
+     *
+     * @param pools The pools, as a mask of {@link ManaPoolType#mask()} bits
+     * @param amount Amount of mana to consume from each pool
+     * @return true if mana was consumed, false if a selected pool holds too little
+     */
+    public boolean consumeMana(int pools, double amount) {
+        if ((pools & ALL_POOLS) == 0 || amount < 0) {
+            return false;
+        }
+
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                if ((pools & 1 << pool) != 0 && stored(pool) < amount) {
+                    return false;
+                }
+            }
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                if ((pools & 1 << pool) != 0) {
+                    take(pool, amount);
+                }
+            }
+            changed();
+            return true;
+        } finally {
+            unlockWrite(stamp, frame);
         }
     }
 
@@ -191,10 +627,15 @@ public class ManaPool {
      * @param type The pool type to restore
      */
     public void restorePool(@NotNull ManaPoolType type) {
-        switch (type) {
-            case PRIMARY -> primaryMana = getPrimaryMax();
-            case SECONDARY -> secondaryMana = getSecondaryMax();
-            case TERTIARY -> tertiaryMana = getTertiaryMax();
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            store(type.ordinal(), store.max(slot, type.ordinal()));
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
         }
     }
 
@@ -202,9 +643,18 @@ public class ManaPool {
      * Instantly restore all pools to maximum.
      */
     public void restoreAll() {
-        primaryMana = getPrimaryMax();
-        secondaryMana = getSecondaryMax();
-        tertiaryMana = getTertiaryMax();
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                store(pool, store.max(slot, pool));
+            }
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
+        }
     }
 
     /**
@@ -219,20 +669,16 @@ public class ManaPool {
             return;
         }
 
-        switch (type) {
-            case PRIMARY -> {
-                primaryPoolValue += amount;
-                // Also increase current mana proportionally
-                primaryMana = Math.min(primaryMana + amount, getPrimaryMax());
-            }
-            case SECONDARY -> {
-                secondaryPoolValue += amount;
-                secondaryMana = Math.min(secondaryMana + amount, getSecondaryMax());
-            }
-            case TERTIARY -> {
-                tertiaryPoolValue += amount;
-                tertiaryMana = Math.min(tertiaryMana + amount, getTertiaryMax());
-            }
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            // Also increases current mana proportionally
+            adjustPoolValue(type.ordinal(), amount);
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
         }
     }
 
@@ -247,59 +693,395 @@ public class ManaPool {
             return;
         }
 
-        switch (type) {
-            case PRIMARY -> {
-                primaryPoolValue = value;
-                primaryMana = Math.min(primaryMana, getPrimaryMax());
-            }
-            case SECONDARY -> {
-                secondaryPoolValue = value;
-                secondaryMana = Math.min(secondaryMana, getSecondaryMax());
-            }
-            case TERTIARY -> {
-                tertiaryPoolValue = value;
-                tertiaryMana = Math.min(tertiaryMana, getTertiaryMax());
-            }
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            int pool = type.ordinal();
+            store.setPoolValue(slot, pool, value);
+            clampToMax(pool);
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
         }
     }
 
     /**
      * Apply temporary max modifier (from equipment, buffs, etc.). These don't persist and should be
-     * reapplied on login.
+     * reapplied on login. Modifiers applied this way add up into one flat amount per pool, so
+     * removing one means applying its negation; prefer
+     * {@link #addMaxModifier(Identifier, ManaPoolType, double, ModifierOperation)} when the
+     * modifier has a source that can go away.
      *
      * @param type The pool type
      * @param modifier The modifier amount (can be positive or negative)
      */
     public void applyMaxModifier(@NotNull ManaPoolType type, double modifier) {
-        switch (type) {
-            case PRIMARY -> {
-                primaryMaxModifier += modifier;
-                // Clamp current mana if max decreased
-                primaryMana = Math.min(primaryMana, getPrimaryMax());
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            int pool = type.ordinal();
+            store.setModifier(slot, pool,
+                    store.modifier[slot * ManaPoolStore.POOLS + pool] + modifier);
+            // Clamp current mana if max decreased
+            clampToMax(pool);
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    /**
+     * Apply a temporary max modifier that removes itself after a number of server ticks, for
+     * potions and other timed buffs. Expiry is driven by {@link ManaTimers}, so it costs nothing
+     * per tick while it runs.
+     *
+     * @param type The pool type
+     * @param modifier The modifier amount (can be positive or negative)
+     * @param durationTicks How long the modifier lasts, in ticks
+     * @return The expiry timer; cancelling it leaves the modifier applied
+     */
+    @NotNull
+    public ManaTimerWheel.Timer applyMaxModifier(@NotNull ManaPoolType type, double modifier,
+            long durationTicks) {
+        // Kept apart from the flat amount, so clearing modifiers first cannot make expiry overshoot
+        return putMaxModifier(null, type.ordinal(), modifier, ModifierOperation.ADD,
+                Math.max(0, durationTicks));
+    }
+
+    /**
+     * Add or replace the max modifier of a source on one pool. Sources are typically an item,
+     * enchantment or effect id; each source has at most one modifier per pool, so re-adding
+     * replaces it and removing it never needs the amount.
+     *
+     * @param source The source of the modifier
+     * @param type The pool type
+     * @param amount The amount for {@link ModifierOperation#ADD}, or the fraction for
+     *        {@link ModifierOperation#MULTIPLY} (0.25 is +25%)
+     * @param operation How the amount applies
+     */
+    public void addMaxModifier(@NotNull Identifier source, @NotNull ManaPoolType type,
+            double amount, @NotNull ModifierOperation operation) {
+        putMaxModifier(source, type.ordinal(), amount, operation, PERMANENT);
+    }
+
+    /**
+     * Add or replace the max modifier of a source on one pool for a number of server ticks, after
+     * which it removes itself. Replacing or removing it before then cancels the expiry.
+     *
+     * @param source The source of the modifier
+     * @param type The pool type
+     * @param amount The amount for {@link ModifierOperation#ADD}, or the fraction for
+     *        {@link ModifierOperation#MULTIPLY}
+     * @param operation How the amount applies
+     * @param durationTicks How long the modifier lasts, in ticks
+     * @return The expiry timer; cancelling it keeps the modifier until removed
+     */
+    @NotNull
+    public ManaTimerWheel.Timer addMaxModifier(@NotNull Identifier source,
+            @NotNull ManaPoolType type, double amount, @NotNull ModifierOperation operation,
+            long durationTicks) {
+        return putMaxModifier(source, type.ordinal(), amount, operation,
+                Math.max(0, durationTicks));
+    }
+
+    /**
+     * Remove the max modifier of a source from one pool.
+     *
+     * @param source The source of the modifier
+     * @param type The pool type
+     * @return true if the source had a modifier on the pool
+     */
+    public boolean removeMaxModifier(@NotNull Identifier source, @NotNull ManaPoolType type) {
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            int index = modifiers != null ? modifiers.indexOf(source, type.ordinal()) : -1;
+            if (index < 0) {
+                return false;
+            }
+
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            refreshSourceModifiers(1 << modifiers.remove(index));
+            changed();
+            return true;
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    /**
+     * Remove the max modifiers of a source from every pool.
+     *
+     * @param source The source of the modifiers
+     * @return true if the source had a modifier on any pool
+     */
+    public boolean removeMaxModifier(@NotNull Identifier source) {
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            if (modifiers == null) {
+                return false;
+            }
+
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            int pools = modifiers.removeAll(source);
+            if (pools == 0) {
+                return false;
+            }
+
+            refreshSourceModifiers(pools);
+            changed();
+            return true;
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    /**
+     * Get the max modifier amount of a source on one pool.
+     *
+     * @param source The source of the modifier
+     * @param type The pool type
+     * @return The amount, or 0 if the source has no modifier on the pool
+     */
+    public double getMaxModifier(@NotNull Identifier source, @NotNull ManaPoolType type) {
+        double amount = readModifier(source, type.ordinal());
+        return Double.isNaN(amount) ? 0 : amount;
+    }
+
+    /**
+     * Check whether a source has a max modifier on one pool.
+     *
+     * @param source The source of the modifier
+     * @param type The pool type
+     * @return true if it has
+     */
+    public boolean hasMaxModifier(@NotNull Identifier source, @NotNull ManaPoolType type) {
+        return !Double.isNaN(readModifier(source, type.ordinal()));
+    }
+
+    /**
+     * Looks up the amount of a source's modifier on a pool, optimistically first and again under
+     * the read lock if a writer interfered.
+     *
+     * @return The amount, or NaN if the source has no modifier on the pool
+     */
+    private double readModifier(Identifier source, int pool) {
+        ManaPoolStore store = this.store;
+        StampedLock lock = store.lock(this.slot);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            ManaModifiers modifiers = this.modifiers;
+            double amount = modifiers != null ? modifiers.find(source, pool) : Double.NaN;
+            if (lock.validate(stamp) && store == this.store) {
+                return amount;
             }
-            case SECONDARY -> {
-                secondaryMaxModifier += modifier;
-                secondaryMana = Math.min(secondaryMana, getSecondaryMax());
+        }
+
+        stamp = readLock();
+        try {
+            ManaModifiers modifiers = this.modifiers;
+            return modifiers != null ? modifiers.find(source, pool) : Double.NaN;
+        } finally {
+            unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds a modifier entry, replacing the source's entry on the pool, and schedules its expiry
+     * unless it is {@link #PERMANENT}.
+     *
+     * @return The expiry timer, or null if permanent
+     */
+    @Nullable
+    private ManaTimerWheel.Timer putMaxModifier(@Nullable Identifier source, int pool,
+            double amount, ModifierOperation operation, long durationTicks) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("Invalid modifier amount: " + amount);
+        }
+
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            if (modifiers == null) {
+                modifiers = new ManaModifiers();
+            }
+            int existing = source != null ? modifiers.indexOf(source, pool) : -1;
+            if (existing >= 0) {
+                modifiers.remove(existing);
+            }
+
+            int index = modifiers.add(source, pool, amount, operation);
+            ManaTimerWheel.Timer timer = null;
+            if (durationTicks != PERMANENT) {
+                long id = modifiers.id(index);
+                timer = ManaTimers.schedule(durationTicks, () -> expireMaxModifier(id));
+                modifiers.setTimer(index, timer);
+            }
+            refreshSourceModifiers(1 << pool);
+            changed();
+            return timer;
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    /**
+     * Removes a timed modifier entry when its timer runs, unless it was removed or replaced since.
+     */
+    private void expireMaxModifier(long id) {
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            int index = modifiers != null ? modifiers.indexOf(id) : -1;
+            if (index < 0) {
+                return;
             }
-            case TERTIARY -> {
-                tertiaryMaxModifier += modifier;
-                tertiaryMana = Math.min(tertiaryMana, getTertiaryMax());
+
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            refreshSourceModifiers(1 << modifiers.remove(index));
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    /**
+     * Re-aggregates the source-keyed modifiers of the pools in a mask into the store and clamps
+     * their mana. Only changed pools are summed, and only when they change.
+     */
+    private void refreshSourceModifiers(int pools) {
+        for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+            if ((pools & 1 << pool) != 0) {
+                store.setSourceModifiers(slot, pool, modifiers.sum(pool, ModifierOperation.ADD),
+                        modifiers.sum(pool, ModifierOperation.MULTIPLY));
+                clampToMax(pool);
             }
         }
     }
 
     /**
-     * Clear all temporary max modifiers.
+     * Clear all temporary max modifiers: the flat ones, every source's, and timed ones, whose
+     * expiry is cancelled.
      */
     public void clearMaxModifiers() {
-        primaryMaxModifier = 0;
-        secondaryMaxModifier = 0;
-        tertiaryMaxModifier = 0;
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            resetModifiers();
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                // Clamp current mana values
+                clampToMax(pool);
+            }
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    /**
+     * Drops every modifier of every pool without clamping.
+     */
+    private void resetModifiers() {
+        if (modifiers != null) {
+            modifiers.clear();
+        }
+        for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+            store.setModifier(slot, pool, 0);
+            store.setSourceModifiers(slot, pool, 0, 0);
+        }
+    }
+
+    /**
+     * Change a pool's effective max by a difference, as {@link #setMaxMana} with the current max
+     * plus the difference.
+     *
+     * @param type The pool type
+     * @param difference The change to the max, positive or negative
+     */
+    public void increaseMaxMana(@NotNull ManaPoolType type, double difference) {
+        if (difference == 0 || !Double.isFinite(difference)) {
+            return;
+        }
+
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            int pool = type.ordinal();
+            if (setMax(pool, store.max(slot, pool) + difference)) {
+                changed();
+            }
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    /**
+     * Set a pool's effective max by adjusting its pool value. The pool value is solved for under
+     * the current modifiers, so the max lands on the target even while a multiplicative modifier
+     * scales it. Growth also adds the difference to current mana, as {@link #increasePoolValue}
+     * does; shrinking clamps current mana. The pool value never drops below zero, so a max below
+     * what the modifiers alone add is not reached, and a pool whose multipliers take it to zero is
+     * left unchanged.
+     *
+     * @param type The pool type
+     * @param max The new effective max
+     */
+    public void setMaxMana(@NotNull ManaPoolType type, double max) {
+        if (!Double.isFinite(max)) {
+            return;
+        }
 
-        // Clamp current mana values
-        primaryMana = Math.min(primaryMana, getPrimaryMax());
-        secondaryMana = Math.min(secondaryMana, getSecondaryMax());
-        tertiaryMana = Math.min(tertiaryMana, getTertiaryMax());
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            if (setMax(type.ordinal(), Math.max(0, max))) {
+                changed();
+            }
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    /**
+     * Sets the pool value that gives a pool the target max: the max is
+     * {@code (poolValue + flat + addition) * (1 + multiplier)}, so the pool value is
+     * {@code target / (1 + multiplier) - flat - addition}.
+     *
+     * @return false, changing nothing, if the multipliers leave no pool value that counts
+     */
+    private boolean setMax(int pool, double target) {
+        int index = slot * ManaPoolStore.POOLS + pool;
+        double scale = 1 + store.multiplier[index];
+        if (scale <= 0) {
+            return false;
+        }
+
+        double oldMax = store.max(slot, pool);
+        store.setPoolValue(slot, pool,
+                Math.max(0, target / scale - store.modifier[index] - store.addition[index]));
+        double newMax = store.max(slot, pool);
+        if (newMax > oldMax) {
+            store(pool, Math.min(stored(pool) + newMax - oldMax, newMax));
+        } else {
+            clampToMax(pool);
+        }
+        return true;
     }
 
     /**
@@ -308,29 +1090,38 @@ public class ManaPool {
      * @param amount Amount to expand each pool value
      */
     public void expandAllPools(double amount) {
-        increasePoolValue(ManaPoolType.PRIMARY, amount);
-        increasePoolValue(ManaPoolType.SECONDARY, amount);
-        increasePoolValue(ManaPoolType.TERTIARY, amount);
+        if (amount <= 0) {
+            return;
+        }
+
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                adjustPoolValue(pool, amount);
+            }
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
+        }
     }
 
     /**
-     * Share mana with another ManaPool.
+     * Share mana with another ManaPool. Both pools are updated together, as a
+     * {@link ManaTransaction}.
      *
      * @param other The other ManaPool to share with
      * @param amount Amount to share
      * @return true if mana was shared, false otherwise
      */
     public boolean shareMana(@NotNull ManaPool other, double amount) {
-        if (amount <= 0 || getTotalMana() < amount) {
-            return false;
-        }
-
-        if (!consumeMana(amount)) {
+        if (amount <= 0) {
             return false;
         }
-
-        other.restoreMana(amount);
-        return true;
+        // Not begin(): the caller may be building this thread's transaction
+        return SHARE.get().clear().transfer(this, other, amount).commit();
     }
 
     /**
@@ -339,126 +1130,218 @@ public class ManaPool {
      * @param regenerating Whether mana should regenerate
      */
     public void setRegenerating(boolean regenerating) {
-        this.regenerating = regenerating;
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            store.settle(slot);
+            store.setRegenerating(slot, regenerating);
+            changed();
+        } finally {
+            unlockWrite(stamp, frame);
+        }
     }
 
     // ==================== GETTERS: Current Mana ====================
 
     public double getPrimaryMana() {
-        return primaryMana;
+        return read(ManaPoolStore::current, PRIMARY);
     }
 
     public double getSecondaryMana() {
-        return secondaryMana;
+        return read(ManaPoolStore::current, SECONDARY);
     }
 
     public double getTertiaryMana() {
-        return tertiaryMana;
+        return read(ManaPoolStore::current, TERTIARY);
     }
 
     public double getTotalMana() {
-        return primaryMana + secondaryMana + tertiaryMana;
+        return read(ManaPool::totalMana, 0);
     }
 
     // ==================== GETTERS: Pool Values ====================
 
     public double getPrimaryPoolValue() {
-        return primaryPoolValue;
+        return read(ManaPool::poolValue, PRIMARY);
     }
 
     public double getSecondaryPoolValue() {
-        return secondaryPoolValue;
+        return read(ManaPool::poolValue, SECONDARY);
     }
 
     public double getTertiaryPoolValue() {
-        return tertiaryPoolValue;
+        return read(ManaPool::poolValue, TERTIARY);
     }
 
     // ==================== GETTERS: Effective Max (Pool Value + Modifiers)
     // ====================
 
     public double getPrimaryMax() {
-        return Math.max(0, primaryPoolValue + primaryMaxModifier);
+        return read(ManaPoolStore::max, PRIMARY);
     }
 
     public double getSecondaryMax() {
-        return Math.max(0, secondaryPoolValue + secondaryMaxModifier);
+        return read(ManaPoolStore::max, SECONDARY);
     }
 
     public double getTertiaryMax() {
-        return Math.max(0, tertiaryPoolValue + tertiaryMaxModifier);
+        return read(ManaPoolStore::max, TERTIARY);
     }
 
     public double getTotalMaxMana() {
-        return getPrimaryMax() + getSecondaryMax() + getTertiaryMax();
+        return read(ManaPool::totalMax, 0);
     }
 
     // ==================== GETTERS: Percentages ====================
 
     public double getPrimaryPercent() {
-        double max = getPrimaryMax();
-        return max > 0 ? primaryMana / max : 0.0;
+        return read(ManaPool::percent, PRIMARY);
     }
 
     public double getSecondaryPercent() {
-        double max = getSecondaryMax();
-        return max > 0 ? secondaryMana / max : 0.0;
+        return read(ManaPool::percent, SECONDARY);
     }
 
     public double getTertiaryPercent() {
-        double max = getTertiaryMax();
-        return max > 0 ? tertiaryMana / max : 0.0;
+        return read(ManaPool::percent, TERTIARY);
     }
 
     public double getTotalPercent() {
-        double totalMax = getTotalMaxMana();
-        return totalMax > 0 ? getTotalMana() / totalMax : 0.0;
+        return read(ManaPool::totalPercent, 0);
     }
 
     // ==================== GETTERS: Modifiers ====================
+    // What all modifiers together add to the pool value: the effective max minus the pool value
 
     public double getPrimaryMaxModifier() {
-        return primaryMaxModifier;
+        return read(ManaPool::modifier, PRIMARY);
     }
 
     public double getSecondaryMaxModifier() {
-        return secondaryMaxModifier;
+        return read(ManaPool::modifier, SECONDARY);
     }
 
     public double getTertiaryMaxModifier() {
-        return tertiaryMaxModifier;
+        return read(ManaPool::modifier, TERTIARY);
     }
 
     // ==================== GETTERS: State ====================
 
     public boolean isRegenerating() {
-        return regenerating;
+        return read(ManaPool::regenerating, 0) != 0;
     }
 
     /**
      * Check if a specific pool is full.
      */
     public boolean isPoolFull(@NotNull ManaPoolType type) {
-        return switch (type) {
-            case PRIMARY -> primaryMana >= getPrimaryMax();
-            case SECONDARY -> secondaryMana >= getSecondaryMax();
-            case TERTIARY -> tertiaryMana >= getTertiaryMax();
-        };
+        return read(ManaPool::full, type.ordinal()) != 0;
     }
 
     /**
      * Check if all pools are full.
      */
     public boolean isAllPoolsFull() {
-        return primaryMana >= getPrimaryMax() && secondaryMana >= getSecondaryMax()
-                && tertiaryMana >= getTertiaryMax();
+        return read(ManaPool::allFull, 0) != 0;
     }
 
     /**
      * Check if all pools are empty.
      */
     public boolean isAllPoolsEmpty() {
-        return primaryMana <= 0 && secondaryMana <= 0 && tertiaryMana <= 0;
+        return read(ManaPool::allEmpty, 0) != 0;
+    }
+
+    /**
+     * Reads the current mana and effective max of every pool from one consistent snapshot, for
+     * observers that need them together. Separate getters may each see a different write.
+     *
+     * @param state The buffer to fill, {@code POOLS * 2} long: current mana of each pool, then each
+     *        effective max
+     * @return The regenerating flag
+     */
+    public boolean snapshot(double[] state) {
+        ManaPoolStore store = this.store;
+        int slot = this.slot;
+        StampedLock lock = store.lock(slot);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            boolean regenerating = snapshot(store, slot, state);
+            if (lock.validate(stamp) && store == this.store) {
+                return regenerating;
+            }
+        }
+
+        stamp = readLock();
+        try {
+            return snapshot(this.store, this.slot, state);
+        } finally {
+            unlockRead(stamp);
+        }
+    }
+
+    private static boolean snapshot(ManaPoolStore store, int slot, double[] state) {
+        for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+            state[pool] = store.current(slot, pool);
+            state[ManaPoolStore.POOLS + pool] = store.max(slot, pool);
+        }
+        return store.isRegenerating(slot);
+    }
+
+    // Snapshot queries for read(); booleans are returned as 1 or 0
+
+    private static double poolValue(ManaPoolStore store, int slot, int pool) {
+        return store.poolValue[slot * ManaPoolStore.POOLS + pool];
+    }
+
+    private static double modifier(ManaPoolStore store, int slot, int pool) {
+        return store.max(slot, pool) - store.poolValue[slot * ManaPoolStore.POOLS + pool];
+    }
+
+    private static double totalMana(ManaPoolStore store, int slot, int unused) {
+        return store.current(slot, PRIMARY) + store.current(slot, SECONDARY)
+                + store.current(slot, TERTIARY);
+    }
+
+    private static double totalMax(ManaPoolStore store, int slot, int unused) {
+        return store.max(slot, PRIMARY) + store.max(slot, SECONDARY) + store.max(slot, TERTIARY);
+    }
+
+    private static double percent(ManaPoolStore store, int slot, int pool) {
+        double max = store.max(slot, pool);
+        return max > 0 ? store.current(slot, pool) / max : 0.0;
+    }
+
+    private static double totalPercent(ManaPoolStore store, int slot, int unused) {
+        double totalMax = totalMax(store, slot, unused);
+        return totalMax > 0 ? totalMana(store, slot, unused) / totalMax : 0.0;
+    }
+
+    private static double regenerating(ManaPoolStore store, int slot, int unused) {
+        return store.isRegenerating(slot) ? 1 : 0;
+    }
+
+    private static double full(ManaPoolStore store, int slot, int pool) {
+        return store.current(slot, pool) >= store.max(slot, pool) ? 1 : 0;
+    }
+
+    private static double allFull(ManaPoolStore store, int slot, int unused) {
+        for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+            if (store.current(slot, pool) < store.max(slot, pool)) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+
+    private static double allEmpty(ManaPoolStore store, int slot, int unused) {
+        for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+            if (store.current(slot, pool) > 0) {
+                return 0;
+            }
+        }
+        return 1;
     }
 
     // ==================== SETTERS (For Commands) ====================
@@ -467,87 +1350,268 @@ public class ManaPool {
      * Directly set current mana (for commands/debugging).
      */
     public void setPrimaryMana(double value) {
-        this.primaryMana = Math.max(0, Math.min(value, getPrimaryMax()));
+        setMana(ManaPoolType.PRIMARY, value);
     }
 
     public void setSecondaryMana(double value) {
-        this.secondaryMana = Math.max(0, Math.min(value, getSecondaryMax()));
+        setMana(ManaPoolType.SECONDARY, value);
     }
 
     public void setTertiaryMana(double value) {
-        this.tertiaryMana = Math.max(0, Math.min(value, getTertiaryMax()));
+        setMana(ManaPoolType.TERTIARY, value);
     }
 
     // ==================== NBT SERIALIZATION ====================
 
     /**
-     * Save to NBT. Saves current mana, pool values, and modifiers.
+     * Checks whether this pool changed since it was last persisted. Any mutation marks it dirty,
+     * and so does regeneration, which counts until the pool is full again.
      *
-     * @param nbt The NBT compound to write to
-     * @return The modified NBT compound
+     * @return true if the pool must be written to be saved correctly
      */
-    @NotNull
-    public NbtCompound writeNbt(@NotNull NbtCompound nbt) {
-        // Current mana
-        nbt.putDouble("PrimaryMana", primaryMana);
-        nbt.putDouble("SecondaryMana", secondaryMana);
-        nbt.putDouble("TertiaryMana", tertiaryMana);
+    public boolean isDirty() {
+        long stamp = writeLock();
+        try {
+            store.updateActivity(slot);
+            return store.isDirty(slot);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
 
-        // Pool values (permanent progression)
-        nbt.putDouble("PrimaryPoolValue", primaryPoolValue);
-        nbt.putDouble("SecondaryPoolValue", secondaryPoolValue);
-        nbt.putDouble("TertiaryPoolValue", tertiaryPoolValue);
+    /**
+     * Checks whether this pool was mutated since the last call, and clears the mark. Regeneration
+     * is not a mutation: it is deterministic, so observers that know the last values and the
+     * regeneration rates can follow it without being told.
+     *
+     * @return true if a mutation happened since the last call
+     */
+    public boolean pollChanged() {
+        long stamp = writeLock();
+        try {
+            return store.pollChanged(slot);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
 
-        // Modifiers (don't save - these are temporary and should be reapplied)
-        // nbt.putDouble("PrimaryMaxModifier", primaryMaxModifier);
-        // nbt.putDouble("SecondaryMaxModifier", secondaryMaxModifier);
-        // nbt.putDouble("TertiaryMaxModifier", tertiaryMaxModifier);
+    /**
+     * Marks this pool as persisted.
+     */
+    void clearDirty() {
+        long stamp = writeLock();
+        try {
+            store.clearDirty(slot);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
 
-        // State
-        nbt.putBoolean("Regenerating", regenerating);
+    /**
+     * Gets the version of this pool's changes, for {@link #clearDirty(int)}. Read it before
+     * writing the state out, so that a change racing the write moves it on.
+     *
+     * @return The dirty version
+     */
+    int dirtyVersion() {
+        long stamp = writeLock();
+        try {
+            // Leaving the active list marks the slot dirty, so bring it up to date first
+            store.updateActivity(slot);
+            return store.dirtyVersion(slot);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
 
-        return nbt;
+    /**
+     * Marks this pool as persisted if it was not marked dirty since a save read its version, i.e.
+     * if the saved state is still the latest.
+     *
+     * @param version The version from {@link #dirtyVersion()} read before the saved state
+     */
+    void clearDirty(int version) {
+        long stamp = writeLock();
+        try {
+            if (store.dirtyVersion(slot) == version) {
+                store.clearDirty(slot);
+            }
+        } finally {
+            unlockWrite(stamp);
+        }
     }
 
     /**
-     * Load from NBT. Reads current mana and pool values.
+     * Marks this pool as changed, so the next save writes it.
+     */
+    void markDirty() {
+        long stamp = writeLock();
+        try {
+            store.markDirty(slot);
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Save to NBT in the compact {@link ManaPoolCodec} layout. Saves current mana, pool values and
+     * the regenerating flag; modifiers are temporary and should be reapplied.
+     *
+     * @param nbt The NBT compound to write to
+     * @return The modified NBT compound
+     */
+    @NotNull
+    public NbtCompound writeNbt(@NotNull NbtCompound nbt) {
+        return ManaPoolCodec.write(this, nbt);
+    }
+
+    /**
+     * Load from NBT. Reads the compact layout or the legacy keyed layout; legacy data marks the
+     * pool dirty so it is rewritten in the compact layout on the next save.
      *
      * @param nbt The NBT compound to read from
      */
     public void readNbt(@NotNull NbtCompound nbt) {
-        // Read pool values first
-        primaryPoolValue = nbt.getDouble("PrimaryPoolValue", DEFAULT_PRIMARY_POOL_VALUE);
-        secondaryPoolValue = nbt.getDouble("SecondaryPoolValue", DEFAULT_SECONDARY_POOL_VALUE);
-        tertiaryPoolValue = nbt.getDouble("TertiaryPoolValue", DEFAULT_TERTIARY_POOL_VALUE);
+        ManaPoolCodec.read(this, nbt);
+    }
 
-        // Reset modifiers (temporary, will be reapplied by equipment/buffs)
-        primaryMaxModifier = 0;
-        secondaryMaxModifier = 0;
-        tertiaryMaxModifier = 0;
+    /**
+     * Copies the persistent state for saving, including pending regeneration: current mana of each
+     * pool, then each pool value. Regeneration is not materialized, which only mutations and ticks
+     * do, so saving never moves the values {@link ManaChangeEvents} listeners last saw.
+     *
+     * @param state The buffer to fill, {@code POOLS * 2} long
+     * @return The regenerating flag
+     */
+    boolean persistedState(double[] state) {
+        long stamp = readLock();
+        try {
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                state[pool] = store.current(slot, pool);
+                state[ManaPoolStore.POOLS + pool] = poolValue(pool);
+            }
+            return store.isRegenerating(slot);
+        } finally {
+            unlockRead(stamp);
+        }
+    }
 
-        // Read current mana (default to max if not present)
-        primaryMana = nbt.getDouble("PrimaryMana", getPrimaryMax());
-        secondaryMana = nbt.getDouble("SecondaryMana", getSecondaryMax());
-        tertiaryMana = nbt.getDouble("TertiaryMana", getTertiaryMax());
+    /**
+     * Loads persisted state in the layout of {@link #persistedState}. Modifiers are reset
+     * (temporary, will be reapplied by equipment/buffs) and mana is clamped to the loaded max in
+     * case pool values changed; values above max, including infinity, load as full. Freshly loaded
+     * state matches what was persisted, so the pool is clean afterwards, but it is a change to
+     * observers.
+     *
+     * @param state Current mana of each pool, then each pool value
+     * @param regenerating The persisted regenerating flag
+     */
+    void load(double[] state, boolean regenerating) {
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            resetModifiers();
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                loadPool(pool, state[ManaPoolStore.POOLS + pool], state[pool]);
+            }
+            finishLoad(regenerating);
+        } finally {
+            unlockWrite(stamp, frame);
+        }
+    }
+
+    /**
+     * Loads one pool's persisted pool value and mana. The caller reset the modifiers first.
+     */
+    private void loadPool(int pool, double poolValue, double mana) {
+        store.setPoolValue(slot, pool, Math.max(0, poolValue));
+        store(pool, Math.max(0, Math.min(mana, store.max(slot, pool))));
+    }
 
-        // Clamp mana values to current max (in case pool values changed)
-        primaryMana = Math.min(primaryMana, getPrimaryMax());
-        secondaryMana = Math.min(secondaryMana, getSecondaryMax());
-        tertiaryMana = Math.min(tertiaryMana, getTertiaryMax());
+    /**
+     * Completes a load after every pool was loaded with {@link #loadPool}.
+     */
+    private void finishLoad(boolean regenerating) {
+        store.setRegenerating(slot, regenerating);
+        store.lastUpdateTick[slot] = ManaClock.now();
+        store.clearDirty(slot);
+        store.markChanged(slot);
+        store.updateActivity(slot);
+    }
+
+    /**
+     * Writes the persistent state as a compact binary record: current mana and pool values of
+     * each pool, then the regenerating flag. Modifiers are not saved, as in {@link #writeNbt}.
+     *
+     * @param buffer The buffer to write {@link #RECORD_BYTES} bytes to
+     */
+    void writeRecord(@NotNull ByteBuffer buffer) {
+        long stamp = readLock();
+        try {
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                buffer.putDouble(store.current(slot, pool));
+            }
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                buffer.putDouble(poolValue(pool));
+            }
+            buffer.put((byte) (store.isRegenerating(slot) ? 1 : 0));
+        } finally {
+            unlockRead(stamp);
+        }
+    }
 
-        // State
-        regenerating = nbt.getBoolean("Regenerating", true);
+    /**
+     * Reads a record written by {@link #writeRecord(ByteBuffer)}, with the same clamping and
+     * modifier reset as {@link #readNbt}.
+     *
+     * @param buffer The buffer to read {@link #RECORD_BYTES} bytes from
+     */
+    void readRecord(@NotNull ByteBuffer buffer) {
+        // Mana precedes pool values in the record, but is clamped against the new max
+        int manaPosition = buffer.position();
+        buffer.position(manaPosition + ManaPoolStore.POOLS * Double.BYTES);
+        long stamp = writeLock();
+        int frame = ManaChangeEvents.NO_FRAME;
+        try {
+            frame = ManaChangeEvents.before(this, store, slot);
+            resetModifiers();
+            for (int pool = PRIMARY; pool <= TERTIARY; pool++) {
+                loadPool(pool, buffer.getDouble(),
+                        buffer.getDouble(manaPosition + pool * Double.BYTES));
+            }
+            finishLoad(buffer.get() != 0);
+        } finally {
+            unlockWrite(stamp, frame);
+        }
     }
 
     /**
      * Pool type enumeration.
      */
     public enum ManaPoolType {
-        PRIMARY, SECONDARY, TERTIARY
+        PRIMARY, SECONDARY, TERTIARY;
+
+        /**
+         * Gets this pool's bit for the mask-taking operations. Combine with {@code |}, or use
+         * {@link ManaPool#ALL_POOLS}.
+         *
+         * @return The mask bit
+         */
+        public int mask() {
+            return 1 << ordinal();
+        }
     }
 
-    public void increaseMaxMana(ManaPoolType type, double difference) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'increaseMaxMana'");
+    /**
+     * How a source-keyed max modifier applies. A pool's effective max is its pool value plus the
+     * flat and additive modifiers, scaled by one plus the sum of the multiplicative ones, so two
+     * +25% modifiers make +50%, not +56.25%.
+     */
+    public enum ModifierOperation {
+        /** Adds the amount to the pool value. */
+        ADD,
+        /** Adds the amount, as a fraction, to the multiplier of the pool value and additions. */
+        MULTIPLY
     }
 }
@@ -0,0 +1,178 @@
+package dk.mosberg.mana;
+
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.Mana;
+import net.minecraft.nbt.NbtCompound;
+
+/**
+ * Compact, versioned NBT encoding of a {@link ManaPool}. The whole pool is a single int-array tag
+ * instead of seven separately named entries:
+ *
+ * <pre>
+ * [0]    format version &lt;&lt; 8 | flags
+ * [1..3] current mana of the primary, secondary and tertiary pool
+ * [4..6] pool values in the same order
+ * </pre>
+ *
+ * <p>
+ * Values are fixed-point with {@value #SCALE} steps per point of mana. A pool whose values do not
+ * fit that range sets {@link #FLAG_WIDE} and stores every value losslessly as the high and low
+ * half of its double bits instead, so extreme progression is never truncated.
+ *
+ * <p>
+ * Reading falls back to the legacy keyed layout written before this codec existed. Legacy data
+ * leaves the pool dirty, so it is migrated to the compact layout by the next save.
+ */
+public final class ManaPoolCodec {
+
+    /** Name of the compact int-array tag. */
+    public static final String TAG = "Mana";
+
+    /** Current format version. */
+    public static final int VERSION = 1;
+
+    private static final int SCALE = 1000;
+    private static final double MAX_FIXED = Integer.MAX_VALUE / (double) SCALE;
+
+    private static final int FLAG_REGENERATING = 1;
+    private static final int FLAG_WIDE = 1 << 1;
+
+    private static final int VALUES = ManaPoolStore.POOLS * 2;
+
+    // Legacy keyed layout
+    private static final String[] LEGACY_MANA_KEYS = {"PrimaryMana", "SecondaryMana",
+            "TertiaryMana"};
+    private static final String[] LEGACY_POOL_VALUE_KEYS = {"PrimaryPoolValue",
+            "SecondaryPoolValue", "TertiaryPoolValue"};
+    private static final String LEGACY_REGENERATING_KEY = "Regenerating";
+    private static final double[] DEFAULT_POOL_VALUES = {ManaPool.DEFAULT_PRIMARY_POOL_VALUE,
+            ManaPool.DEFAULT_SECONDARY_POOL_VALUE, ManaPool.DEFAULT_TERTIARY_POOL_VALUE};
+
+    private ManaPoolCodec() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    // ==================== COMPACT LAYOUT ====================
+
+    /**
+     * Writes a pool in the compact layout.
+     *
+     * @param pool The pool to write
+     * @param nbt The NBT compound to write to
+     * @return The modified NBT compound
+     */
+    @NotNull
+    public static NbtCompound write(@NotNull ManaPool pool, @NotNull NbtCompound nbt) {
+        double[] state = new double[VALUES];
+        boolean regenerating = pool.persistedState(state);
+        boolean wide = false;
+        for (int i = 0; i < VALUES && !wide; i++) {
+            wide = !fitsFixed(state[i]);
+        }
+
+        int flags = (regenerating ? FLAG_REGENERATING : 0) | (wide ? FLAG_WIDE : 0);
+        int[] data = new int[1 + (wide ? VALUES * 2 : VALUES)];
+        data[0] = VERSION << 8 | flags;
+        int index = 1;
+        for (int i = 0; i < VALUES; i++) {
+            double value = state[i];
+            if (wide) {
+                long bits = Double.doubleToLongBits(value);
+                data[index++] = (int) (bits >>> 32);
+                data[index++] = (int) bits;
+            } else {
+                data[index++] = (int) Math.round(value * SCALE);
+            }
+        }
+
+        nbt.putIntArray(TAG, data);
+        return nbt;
+    }
+
+    /**
+     * Reads a pool from either layout. Data of an unknown version is ignored with a warning and
+     * leaves the pool unchanged.
+     *
+     * @param pool The pool to read into
+     * @param nbt The NBT compound to read from
+     */
+    public static void read(@NotNull ManaPool pool, @NotNull NbtCompound nbt) {
+        int[] data = nbt.getIntArray(TAG).orElse(null);
+        if (data == null) {
+            readLegacy(pool, nbt);
+            pool.markDirty();
+            return;
+        }
+
+        if (data.length == 0 || data[0] >>> 8 != VERSION) {
+            Mana.LOGGER.warn("Ignoring mana data of unsupported format {}",
+                    data.length == 0 ? "(empty)" : data[0] >>> 8);
+            return;
+        }
+
+        boolean wide = (data[0] & FLAG_WIDE) != 0;
+        if (data.length != 1 + (wide ? VALUES * 2 : VALUES)) {
+            Mana.LOGGER.warn("Ignoring truncated mana data ({} values)", data.length);
+            return;
+        }
+
+        double[] state = new double[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            state[i] = value(data, i, wide);
+        }
+        pool.load(state, (data[0] & FLAG_REGENERATING) != 0);
+    }
+
+    private static boolean fitsFixed(double value) {
+        return Math.abs(value) <= MAX_FIXED;
+    }
+
+    private static double value(int[] data, int value, boolean wide) {
+        if (!wide) {
+            return data[1 + value] / (double) SCALE;
+        }
+        int index = 1 + value * 2;
+        return Double.longBitsToDouble((long) data[index] << 32 | (data[index + 1] & 0xFFFFFFFFL));
+    }
+
+    // ==================== LEGACY LAYOUT ====================
+
+    /**
+     * Writes a pool in the legacy keyed layout. Only kept to benchmark against and to produce
+     * migration input.
+     *
+     * @param pool The pool to write
+     * @param nbt The NBT compound to write to
+     * @return The modified NBT compound
+     */
+    @NotNull
+    static NbtCompound writeLegacy(@NotNull ManaPool pool, @NotNull NbtCompound nbt) {
+        double[] state = new double[VALUES];
+        boolean regenerating = pool.persistedState(state);
+        for (int i = 0; i < ManaPoolStore.POOLS; i++) {
+            nbt.putDouble(LEGACY_MANA_KEYS[i], state[i]);
+        }
+        for (int i = 0; i < ManaPoolStore.POOLS; i++) {
+            nbt.putDouble(LEGACY_POOL_VALUE_KEYS[i], state[ManaPoolStore.POOLS + i]);
+        }
+        nbt.putBoolean(LEGACY_REGENERATING_KEY, regenerating);
+        return nbt;
+    }
+
+    /**
+     * Reads a pool from the legacy keyed layout. Missing pool values fall back to the defaults and
+     * missing mana to a full pool, as the keyed reader always did.
+     *
+     * @param pool The pool to read into
+     * @param nbt The NBT compound to read from
+     */
+    static void readLegacy(@NotNull ManaPool pool, @NotNull NbtCompound nbt) {
+        double[] state = new double[VALUES];
+        for (int i = 0; i < ManaPoolStore.POOLS; i++) {
+            state[i] = nbt.getDouble(LEGACY_MANA_KEYS[i], Double.POSITIVE_INFINITY);
+            state[ManaPoolStore.POOLS + i] =
+                    nbt.getDouble(LEGACY_POOL_VALUE_KEYS[i], DEFAULT_POOL_VALUES[i]);
+        }
+        pool.load(state, nbt.getBoolean(LEGACY_REGENERATING_KEY, true));
+    }
+}
@@ -0,0 +1,634 @@
+package dk.mosberg.mana;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Struct-of-arrays backing store for {@link ManaPool} state. Current mana, pool values and max
+ * modifiers live in contiguous primitive arrays indexed by a dense slot, with the three pools of a
+ * slot stored next to each other ({@code slot * POOLS + pool}). {@link ManaPool} instances are thin
+ * handles onto a slot.
+ *
+ * <p>
+ * The effective max of each pool is cached in its own column and only recomputed when one of its
+ * inputs is written through {@link #setPoolValue}, {@link #setModifier} or
+ * {@link #setSourceModifiers}, so the regeneration loop, clamping and every percent getter read it
+ * directly.
+ *
+ * <p>
+ * Slots that are regenerating and below max are kept in a dense active list, so {@link #tick()}
+ * regenerates every active player in a single loop over primitive arrays without touching handles,
+ * components or the UUID map.
+ *
+ * <p>
+ * Slots are guarded by striped {@link StampedLock}s, slot {@code s} by stripe
+ * {@code s & (stripes - 1)}, so pools on different stripes are mutated in parallel. A lock rather
+ * than per-field atomics, because a pool's value depends on several columns at once (mana, pool
+ * value, modifier, last-updated tick, flags). Every {@link ManaPool} mutation holds the write lock
+ * of its slot's stripe; {@link ManaPool} getters read optimistically and only fall back to the
+ * read lock when a writer interfered. Growth, which replaces every column array, {@link #tick()}
+ * and moving a slot out of the store hold every stripe. The active list, free list and slot counts
+ * are shared by all stripes and guarded by a monitor that is always taken after any stripe. The
+ * package-private slot accessors below do no locking; callers hold the slot's stripe.
+ */
+public final class ManaPoolStore {
+
+    static final int POOLS = 3;
+
+    private static final int FLAG_IN_USE = 1;
+    private static final int FLAG_REGENERATING = 1 << 1;
+    private static final int FLAG_DIRTY = 1 << 2;
+    private static final int FLAG_CHANGED = 1 << 3;
+
+    private static final double[] REGEN_RATES = {ManaPool.REGEN_RATE_PRIMARY,
+            ManaPool.REGEN_RATE_SECONDARY, ManaPool.REGEN_RATE_TERTIARY};
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    // Upper bound on lock stripes; small stores get one stripe per slot of initial capacity
+    private static final int MAX_STRIPES = 64;
+
+    /** Orders stores so that code locking several of them always locks in the same order. */
+    final long id = NEXT_ID.getAndIncrement();
+    private final StampedLock[] locks;
+    private final int stripeMask;
+    // Stamps of lockAll(); element i is only written by the holder of stripe i
+    private final long[] allStamps;
+    // Guards the active list, free list and slot counts. Taken after any stripe, never before.
+    private final Object structure = new Object();
+
+    // Per-pool columns (slot * POOLS + pool). The max inputs are written through their setters.
+    double[] mana;
+    double[] poolValue;
+    // Flat modifier of applyMaxModifier, then the sums of the source-keyed modifiers
+    double[] modifier;
+    double[] addition;
+    double[] multiplier;
+    // Effective max, derived from the four columns above
+    double[] maxMana;
+
+    // Per-slot columns
+    long[] lastUpdateTick;
+    // Bumped whenever the slot is marked dirty, so a save can tell if it wrote the latest state
+    private int[] dirtyVersion;
+    private ManaPool[] owners;
+    byte[] flags;
+    private int[] activeIndex;
+
+    // Dense list of slots that still regenerate
+    private int[] activeSlots;
+    private int activeCount;
+
+    // Slot allocation
+    private int[] freeSlots;
+    private int freeCount;
+    private int highWater;
+    private int size;
+
+    /**
+     * Creates a store with room for the given number of slots. The store grows on demand.
+     *
+     * @param initialCapacity The initial slot capacity
+     */
+    public ManaPoolStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        mana = new double[capacity * POOLS];
+        poolValue = new double[capacity * POOLS];
+        modifier = new double[capacity * POOLS];
+        addition = new double[capacity * POOLS];
+        multiplier = new double[capacity * POOLS];
+        maxMana = new double[capacity * POOLS];
+        lastUpdateTick = new long[capacity];
+        dirtyVersion = new int[capacity];
+        owners = new ManaPool[capacity];
+        flags = new byte[capacity];
+        activeIndex = new int[capacity];
+        activeSlots = new int[capacity];
+        freeSlots = new int[capacity];
+        Arrays.fill(activeIndex, -1);
+
+        int stripes = Integer.highestOneBit(Math.min(MAX_STRIPES, capacity));
+        locks = new StampedLock[stripes];
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            locks[stripe] = new StampedLock();
+        }
+        stripeMask = stripes - 1;
+        allStamps = new long[stripes];
+    }
+
+    // ==================== LOCKING ====================
+
+    /**
+     * Gets the stripe guarding a slot.
+     */
+    int stripe(int slot) {
+        return slot & stripeMask;
+    }
+
+    /**
+     * Gets the lock of a stripe.
+     */
+    StampedLock stripeLock(int stripe) {
+        return locks[stripe];
+    }
+
+    /**
+     * Gets the lock guarding a slot.
+     */
+    StampedLock lock(int slot) {
+        return locks[slot & stripeMask];
+    }
+
+    /**
+     * Write-locks every stripe, in stripe order, for changes that span slots.
+     */
+    void lockAll() {
+        for (int stripe = 0; stripe < locks.length; stripe++) {
+            allStamps[stripe] = locks[stripe].writeLock();
+        }
+    }
+
+    /**
+     * Releases the stripes taken by {@link #lockAll()}.
+     */
+    void unlockAll() {
+        for (int stripe = locks.length - 1; stripe >= 0; stripe--) {
+            locks[stripe].unlockWrite(allStamps[stripe]);
+        }
+    }
+
+    // ==================== SLOT LIFECYCLE ====================
+
+    /**
+     * Allocates a slot with full pools and regeneration enabled.
+     *
+     * @param owner The handle of the slot, reported to {@link ManaChangeEvents} listeners
+     * @param primaryPoolValue Base primary pool capacity
+     * @param secondaryPoolValue Base secondary pool capacity
+     * @param tertiaryPoolValue Base tertiary pool capacity
+     * @return The allocated slot
+     */
+    int allocate(ManaPool owner, double primaryPoolValue, double secondaryPoolValue,
+            double tertiaryPoolValue) {
+        int slot = reserve();
+        StampedLock lock = lock(slot);
+        long stamp = lock.writeLock();
+        try {
+            initialize(slot, owner, primaryPoolValue, secondaryPoolValue, tertiaryPoolValue);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return slot;
+    }
+
+    /**
+     * Takes a free slot, growing the store under every stripe if there is none.
+     */
+    private int reserve() {
+        synchronized (structure) {
+            int slot = takeSlot();
+            if (slot >= 0) {
+                return slot;
+            }
+        }
+
+        lockAll();
+        try {
+            synchronized (structure) {
+                int slot = takeSlot();
+                if (slot >= 0) {
+                    return slot;
+                }
+                grow(flags.length * 2);
+                return takeSlot();
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Takes a free slot. The caller holds the structure monitor.
+     *
+     * @return The slot, or -1 if the store is full
+     */
+    private int takeSlot() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else if (highWater < flags.length) {
+            slot = highWater++;
+        } else {
+            return -1;
+        }
+        size++;
+        return slot;
+    }
+
+    private void initialize(int slot, ManaPool owner, double primaryPoolValue,
+            double secondaryPoolValue, double tertiaryPoolValue) {
+        int base = slot * POOLS;
+        poolValue[base] = Math.max(0, primaryPoolValue);
+        poolValue[base + 1] = Math.max(0, secondaryPoolValue);
+        poolValue[base + 2] = Math.max(0, tertiaryPoolValue);
+        for (int pool = 0; pool < POOLS; pool++) {
+            int index = base + pool;
+            modifier[index] = 0;
+            addition[index] = 0;
+            multiplier[index] = 0;
+            refreshMax(index);
+            mana[index] = maxMana[index];
+        }
+        lastUpdateTick[slot] = ManaClock.now();
+        owners[slot] = owner;
+        flags[slot] = FLAG_IN_USE | FLAG_REGENERATING | FLAG_DIRTY | FLAG_CHANGED;
+        dirtyVersion[slot]++;
+    }
+
+    /**
+     * Releases a slot for reuse. Handles pointing at it must not be used afterwards.
+     *
+     * @param slot The slot to release
+     */
+    void release(int slot) {
+        StampedLock lock = lock(slot);
+        long stamp = lock.writeLock();
+        try {
+            releaseLocked(slot);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void releaseLocked(int slot) {
+        if ((flags[slot] & FLAG_IN_USE) == 0) {
+            return;
+        }
+
+        setActive(slot, false);
+        flags[slot] = 0;
+        owners[slot] = null;
+        synchronized (structure) {
+            freeSlots[freeCount++] = slot;
+            size--;
+        }
+    }
+
+    /**
+     * Moves a slot's state into another store and releases it here. The caller holds every stripe
+     * of this store (see {@link #lockAll()}), so no reader that picked the slot before the move
+     * can validate against it afterwards; the target must not be shared yet, since it is not
+     * locked.
+     *
+     * @param slot The slot to move
+     * @param target The store to move into
+     * @return The slot in the target store
+     */
+    int transferTo(int slot, ManaPoolStore target) {
+        int base = slot * POOLS;
+        int targetSlot = target.allocate(owners[slot], poolValue[base], poolValue[base + 1],
+                poolValue[base + 2]);
+        int targetBase = targetSlot * POOLS;
+        for (int pool = 0; pool < POOLS; pool++) {
+            target.modifier[targetBase + pool] = modifier[base + pool];
+            target.addition[targetBase + pool] = addition[base + pool];
+            target.multiplier[targetBase + pool] = multiplier[base + pool];
+            target.refreshMax(targetBase + pool);
+            target.mana[targetBase + pool] = mana[base + pool];
+        }
+        // Moved unsettled, so the move materializes no regeneration behind listeners' backs
+        target.lastUpdateTick[targetSlot] = lastUpdateTick[slot];
+        target.setRegenerating(targetSlot, isRegenerating(slot));
+        if (!isDirty(slot)) {
+            target.clearDirty(targetSlot);
+        }
+        target.updateActivity(targetSlot);
+        releaseLocked(slot);
+        return targetSlot;
+    }
+
+    private void grow(int capacity) {
+        int oldCapacity = flags.length;
+        mana = Arrays.copyOf(mana, capacity * POOLS);
+        poolValue = Arrays.copyOf(poolValue, capacity * POOLS);
+        modifier = Arrays.copyOf(modifier, capacity * POOLS);
+        addition = Arrays.copyOf(addition, capacity * POOLS);
+        multiplier = Arrays.copyOf(multiplier, capacity * POOLS);
+        maxMana = Arrays.copyOf(maxMana, capacity * POOLS);
+        lastUpdateTick = Arrays.copyOf(lastUpdateTick, capacity);
+        dirtyVersion = Arrays.copyOf(dirtyVersion, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        activeIndex = Arrays.copyOf(activeIndex, capacity);
+        activeSlots = Arrays.copyOf(activeSlots, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+        Arrays.fill(activeIndex, oldCapacity, capacity, -1);
+    }
+
+    // ==================== SLOT STATE ====================
+
+    /**
+     * Gets the cached effective max of a pool.
+     */
+    double max(int slot, int pool) {
+        return maxMana[slot * POOLS + pool];
+    }
+
+    /**
+     * Sets a pool value. The caller clamps current mana if the max shrank.
+     */
+    void setPoolValue(int slot, int pool, double value) {
+        int index = slot * POOLS + pool;
+        poolValue[index] = value;
+        refreshMax(index);
+    }
+
+    /**
+     * Sets the flat modifier of a pool. The caller clamps current mana if the max shrank.
+     */
+    void setModifier(int slot, int pool, double value) {
+        int index = slot * POOLS + pool;
+        modifier[index] = value;
+        refreshMax(index);
+    }
+
+    /**
+     * Sets the aggregates of a pool's source-keyed modifiers. The caller clamps current mana if the
+     * max shrank.
+     *
+     * @param addition The sum of the additive modifiers
+     * @param multiplier The sum of the multiplicative modifiers, 0 for none
+     */
+    void setSourceModifiers(int slot, int pool, double addition, double multiplier) {
+        int index = slot * POOLS + pool;
+        this.addition[index] = addition;
+        this.multiplier[index] = multiplier;
+        refreshMax(index);
+    }
+
+    /**
+     * Recomputes a cached max: pool value plus flat and additive modifiers, scaled by one plus the
+     * multiplicative ones, never negative.
+     */
+    private void refreshMax(int index) {
+        maxMana[index] = Math.max(0,
+                (poolValue[index] + modifier[index] + addition[index]) * (1 + multiplier[index]));
+    }
+
+    /**
+     * Gets the current mana of a pool including regeneration not yet settled. Pure read.
+     */
+    double current(int slot, int pool) {
+        double stored = mana[slot * POOLS + pool];
+        if ((flags[slot] & FLAG_REGENERATING) == 0) {
+            return stored;
+        }
+        return ManaPool.regenerate(stored, max(slot, pool), REGEN_RATES[pool],
+                ManaClock.now() - lastUpdateTick[slot]);
+    }
+
+    /**
+     * Folds pending regeneration into the stored values and stamps the slot with the current tick.
+     */
+    void settle(int slot) {
+        long now = ManaClock.now();
+        long elapsed = now - lastUpdateTick[slot];
+        if (elapsed <= 0) {
+            return;
+        }
+
+        if ((flags[slot] & FLAG_REGENERATING) != 0) {
+            int base = slot * POOLS;
+            for (int pool = 0; pool < POOLS; pool++) {
+                mana[base + pool] = ManaPool.regenerate(mana[base + pool], max(slot, pool),
+                        REGEN_RATES[pool], elapsed);
+            }
+        }
+        lastUpdateTick[slot] = now;
+    }
+
+    boolean isRegenerating(int slot) {
+        return (flags[slot] & FLAG_REGENERATING) != 0;
+    }
+
+    /**
+     * Sets the regeneration flag. The caller settles the slot first.
+     */
+    void setRegenerating(int slot, boolean regenerating) {
+        if (regenerating) {
+            flags[slot] |= FLAG_REGENERATING;
+        } else {
+            flags[slot] &= ~FLAG_REGENERATING;
+        }
+    }
+
+    /**
+     * Marks a slot as changed since it was last persisted.
+     */
+    void markDirty(int slot) {
+        flags[slot] |= FLAG_DIRTY;
+        dirtyVersion[slot]++;
+    }
+
+    /**
+     * Clears the changed-since-persisted mark of a slot.
+     */
+    void clearDirty(int slot) {
+        flags[slot] &= ~FLAG_DIRTY;
+    }
+
+    /**
+     * Gets the version of a slot's changes, which moves every time it is marked dirty.
+     */
+    int dirtyVersion(int slot) {
+        return dirtyVersion[slot];
+    }
+
+    /**
+     * Checks whether a slot changed since it was last persisted. Slots on the active list count as
+     * dirty because regeneration keeps changing their values; leaving the list marks them dirty.
+     */
+    boolean isDirty(int slot) {
+        return (flags[slot] & FLAG_DIRTY) != 0 || activeIndex[slot] >= 0;
+    }
+
+    /**
+     * Marks a slot as mutated since it was last observed by {@link #pollChanged}.
+     */
+    void markChanged(int slot) {
+        flags[slot] |= FLAG_CHANGED;
+    }
+
+    /**
+     * Checks and clears the mutated mark of a slot. Unlike the dirty mark, regeneration never sets
+     * it.
+     */
+    boolean pollChanged(int slot) {
+        boolean changed = (flags[slot] & FLAG_CHANGED) != 0;
+        flags[slot] &= ~FLAG_CHANGED;
+        return changed;
+    }
+
+    /**
+     * Re-evaluates active-list membership of a slot after a mutation.
+     */
+    void updateActivity(int slot) {
+        boolean shouldBeActive = false;
+        if (isRegenerating(slot)) {
+            for (int pool = 0; pool < POOLS; pool++) {
+                if (current(slot, pool) < max(slot, pool)) {
+                    shouldBeActive = true;
+                    break;
+                }
+            }
+        }
+        setActive(slot, shouldBeActive);
+    }
+
+    private void setActive(int slot, boolean active) {
+        int index = activeIndex[slot];
+        if (active == (index >= 0)) {
+            return;
+        }
+
+        // Entering or leaving the active list means regeneration changed or will change the values
+        markDirty(slot);
+        synchronized (structure) {
+            if (active) {
+                activeIndex[slot] = activeCount;
+                activeSlots[activeCount++] = slot;
+            } else {
+                // Swap-remove keeps the active list dense. It moves another slot's index, but
+                // never across zero, so isDirty() of that slot holds without the structure monitor.
+                index = activeIndex[slot];
+                int last = activeSlots[--activeCount];
+                activeSlots[index] = last;
+                activeIndex[last] = index;
+                activeIndex[slot] = -1;
+            }
+        }
+    }
+
+    // ==================== BULK OPERATIONS ====================
+
+    /**
+     * Materializes regeneration for every active slot and drops slots that became full. The loop
+     * only reads and writes primitive columns, holding every stripe. The regeneration is reported
+     * to {@link ManaChangeEvents} listeners once the locks are released.
+     */
+    public void tick() {
+        int frame;
+        lockAll();
+        try {
+            frame = tickLocked();
+        } finally {
+            unlockAll();
+        }
+        ManaChangeEvents.fire(frame);
+    }
+
+    /**
+     * @return The first change frame recorded, or {@link ManaChangeEvents#NO_FRAME}
+     */
+    private int tickLocked() {
+        boolean notify = ManaChangeEvents.hasListeners();
+        int firstFrame = ManaChangeEvents.NO_FRAME;
+        long now = ManaClock.now();
+        double[] mana = this.mana;
+        double[] maxMana = this.maxMana;
+        long[] lastUpdateTick = this.lastUpdateTick;
+
+        // Iterate backwards so swap-removal never skips an unvisited slot
+        for (int i = activeCount - 1; i >= 0; i--) {
+            int slot = activeSlots[i];
+            long elapsed = now - lastUpdateTick[slot];
+            if (elapsed <= 0) {
+                continue;
+            }
+
+            int frame = ManaChangeEvents.NO_FRAME;
+            if (notify) {
+                frame = ManaChangeEvents.before(owners[slot], this, slot);
+                if (firstFrame == ManaChangeEvents.NO_FRAME) {
+                    firstFrame = frame;
+                }
+            }
+
+            boolean full = true;
+            int base = slot * POOLS;
+            for (int pool = 0; pool < POOLS; pool++) {
+                int index = base + pool;
+                double max = maxMana[index];
+                double value =
+                        ManaPool.regenerate(mana[index], max, REGEN_RATES[pool], elapsed);
+                mana[index] = value;
+                full &= value >= max;
+            }
+            lastUpdateTick[slot] = now;
+            ManaChangeEvents.after(frame, this, slot);
+
+            if (full) {
+                setActive(slot, false);
+            }
+        }
+        return firstFrame;
+    }
+
+    // ==================== STATISTICS ====================
+
+    /**
+     * Gets the number of slots in use.
+     *
+     * @return The slot count
+     */
+    public int size() {
+        synchronized (structure) {
+            return size;
+        }
+    }
+
+    /**
+     * Gets the number of slots currently regenerating.
+     *
+     * @return The active slot count
+     */
+    public int activeCount() {
+        synchronized (structure) {
+            return activeCount;
+        }
+    }
+
+    /**
+     * Gets the allocated slot capacity.
+     *
+     * @return The capacity in slots
+     */
+    public int capacity() {
+        synchronized (structure) {
+            return flags.length;
+        }
+    }
+
+    /**
+     * Gets the number of bytes held by the store's columns per slot of capacity.
+     *
+     * @return Bytes per slot
+     */
+    public static int bytesPerSlot() {
+        // mana, poolValue, modifier, addition, multiplier, maxMana (3 doubles each),
+        // lastUpdateTick, dirtyVersion, owners (a compressed reference), flags, activeIndex,
+        // activeSlots, freeSlots
+        return POOLS * Double.BYTES * 6 + Long.BYTES + Integer.BYTES * 2 + Byte.BYTES
+                + Integer.BYTES * 3;
+    }
+
+    /**
+     * Gets the approximate heap footprint of the store's columns.
+     *
+     * @return The footprint in bytes
+     */
+    public long estimatedMemoryBytes() {
+        return (long) capacity() * bytesPerSlot();
+    }
+}
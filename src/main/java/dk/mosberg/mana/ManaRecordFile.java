@@ -0,0 +1,313 @@
+package dk.mosberg.mana;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Memory-mapped file of fixed-size mana records, one per player who ever persisted mana. Records
+ * are located through an in-memory open-addressing UUID index, so reading or writing any player,
+ * online or offline, is a hash probe plus a copy between the mapped record and a
+ * {@link ManaPool} without touching player data files.
+ *
+ * <p>
+ * Layout: a {@value #HEADER_BYTES}-byte header (magic, version, record count) followed by records
+ * of {@value #RECORD_SIZE} bytes: the UUID, the {@link ManaPool#RECORD_BYTES} pool record, and
+ * padding to an 8-byte boundary. Records are never removed, so slots are stable. A new record's
+ * body and UUID are forced to disk before the header count is raised to cover it, so a crash never
+ * leaves the count covering a half-written record.
+ *
+ * <p>
+ * All methods are synchronized; the file is shared by the server thread and the write-behind
+ * writer.
+ */
+final class ManaRecordFile implements Closeable {
+
+    private static final int MAGIC = 0x4D414E41; // "MANA"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int COUNT_OFFSET = 8;
+    static final int RECORD_SIZE = (2 * Long.BYTES + ManaPool.RECORD_BYTES + 7) & ~7;
+    private static final int INITIAL_CAPACITY = 1024;
+    // Offsets are ints, so the whole file must stay addressable by one
+    private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_BYTES) / RECORD_SIZE;
+
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int count;
+
+    // Open-addressing index with linear probing; slotPlusOne is 0 for empty buckets
+    private long[] keyMost;
+    private long[] keyLeast;
+    private int[] slotPlusOne;
+    private int mask;
+
+    private ManaRecordFile(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens or creates a record file and builds its index.
+     *
+     * @param file The file path
+     * @return The opened file
+     * @throws IOException If the file cannot be opened or is not a mana record file
+     */
+    @NotNull
+    static ManaRecordFile open(@NotNull Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        ManaRecordFile records = new ManaRecordFile(channel);
+        try {
+            records.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return records;
+    }
+
+    private void load() throws IOException {
+        boolean created = channel.size() < HEADER_BYTES;
+        int stored = 0;
+        if (!created) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " mana record file");
+            }
+            stored = header.getInt();
+            if (stored < 0 || stored > MAX_CAPACITY) {
+                throw new IOException("Corrupt mana record count " + stored);
+            }
+        }
+
+        capacity = INITIAL_CAPACITY;
+        while (capacity < stored) {
+            capacity = (int) Math.min((long) capacity * 2, MAX_CAPACITY);
+        }
+        remap();
+        if (created) {
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putInt(COUNT_OFFSET, 0);
+        }
+
+        initIndex(capacity);
+        for (int slot = 0; slot < stored; slot++) {
+            int offset = offset(slot);
+            index(map.getLong(offset), map.getLong(offset + Long.BYTES), slot);
+        }
+        count = stored;
+    }
+
+    // ==================== RECORD ACCESS ====================
+
+    /**
+     * Restores a player's record into a pool, reading straight from the mapped file.
+     *
+     * @param playerId The player UUID
+     * @param pool The pool to restore into
+     * @return true if the player has a record
+     */
+    synchronized boolean readInto(@NotNull UUID playerId, @NotNull ManaPool pool) {
+        int slot = find(playerId);
+        if (slot < 0) {
+            return false;
+        }
+
+        pool.readRecord(recordView(slot));
+        return true;
+    }
+
+    /**
+     * Writes a pool record for a player, appending a record if the player has none.
+     *
+     * @param playerId The player UUID
+     * @param record A buffer positioned at a {@link ManaPool#RECORD_BYTES} record; it is consumed
+     */
+    synchronized void write(@NotNull UUID playerId, @NotNull ByteBuffer record) {
+        int slot = find(playerId);
+        boolean added = slot < 0;
+        if (added) {
+            slot = reserve();
+        }
+
+        recordView(slot).put(record.slice(record.position(), ManaPool.RECORD_BYTES));
+        record.position(record.position() + ManaPool.RECORD_BYTES);
+        if (added) {
+            publish(slot, playerId);
+        }
+    }
+
+    /**
+     * Writes a pool's current state as a player's record, straight into the mapped file.
+     *
+     * @param playerId The player UUID
+     * @param pool The pool to write
+     */
+    synchronized void writeFrom(@NotNull UUID playerId, @NotNull ManaPool pool) {
+        int slot = find(playerId);
+        boolean added = slot < 0;
+        if (added) {
+            slot = reserve();
+        }
+
+        pool.writeRecord(recordView(slot));
+        if (added) {
+            publish(slot, playerId);
+        }
+    }
+
+    /**
+     * Forces written records to disk.
+     */
+    synchronized void force() {
+        map.force();
+    }
+
+    /**
+     * Gets the number of stored records.
+     *
+     * @return The record count
+     */
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Gets the size of the mapped file.
+     *
+     * @return The size in bytes
+     */
+    synchronized long mappedBytes() {
+        return HEADER_BYTES + (long) capacity * RECORD_SIZE;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        map.force();
+        map = null;
+        channel.close();
+    }
+
+    private ByteBuffer recordView(int slot) {
+        return map.slice(offset(slot) + 2 * Long.BYTES, ManaPool.RECORD_BYTES);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * RECORD_SIZE;
+    }
+
+    // ==================== SLOT ALLOCATION ====================
+
+    /**
+     * Makes room for one more record without publishing it.
+     *
+     * @return The slot the next record goes in
+     */
+    private int reserve() {
+        if (count == capacity) {
+            if (capacity == MAX_CAPACITY) {
+                throw new IllegalStateException("Mana record file is full at " + capacity
+                        + " records");
+            }
+
+            int previous = capacity;
+            capacity = (int) Math.min((long) capacity * 2, MAX_CAPACITY);
+            try {
+                remap();
+            } catch (IOException e) {
+                capacity = previous;
+                throw new IllegalStateException("Failed to grow mana record file", e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Publishes a reserved slot whose body was written: the UUID and body reach the disk before the
+     * header count covers them.
+     */
+    private void publish(int slot, UUID playerId) {
+        int offset = offset(slot);
+        map.putLong(offset, playerId.getMostSignificantBits());
+        map.putLong(offset + Long.BYTES, playerId.getLeastSignificantBits());
+        map.force(offset, RECORD_SIZE);
+
+        count = slot + 1;
+        map.putInt(COUNT_OFFSET, count);
+        index(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits(), slot);
+    }
+
+    private void remap() throws IOException {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedBytes());
+    }
+
+    // ==================== INDEX ====================
+
+    private void initIndex(int records) {
+        int buckets = Integer.highestOneBit(Math.max(16, records * 2 - 1)) << 1;
+        keyMost = new long[buckets];
+        keyLeast = new long[buckets];
+        slotPlusOne = new int[buckets];
+        mask = buckets - 1;
+    }
+
+    private int find(UUID playerId) {
+        long most = playerId.getMostSignificantBits();
+        long least = playerId.getLeastSignificantBits();
+        for (int bucket = hash(most, least) & mask;; bucket = (bucket + 1) & mask) {
+            int slot = slotPlusOne[bucket] - 1;
+            if (slot < 0) {
+                return -1;
+            }
+            if (keyMost[bucket] == most && keyLeast[bucket] == least) {
+                return slot;
+            }
+        }
+    }
+
+    private void index(long most, long least, int slot) {
+        // Keep the load factor at or below 1/2 so probe chains stay short
+        if ((count + 1) * 2 > slotPlusOne.length) {
+            long[] oldMost = keyMost;
+            long[] oldLeast = keyLeast;
+            int[] oldSlots = slotPlusOne;
+            initIndex(oldSlots.length);
+            for (int bucket = 0; bucket < oldSlots.length; bucket++) {
+                if (oldSlots[bucket] != 0) {
+                    insert(oldMost[bucket], oldLeast[bucket], oldSlots[bucket] - 1);
+                }
+            }
+        }
+        insert(most, least, slot);
+    }
+
+    private void insert(long most, long least, int slot) {
+        int bucket = hash(most, least) & mask;
+        while (slotPlusOne[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        keyMost[bucket] = most;
+        keyLeast[bucket] = least;
+        slotPlusOne[bucket] = slot + 1;
+    }
+
+    private static int hash(long most, long least) {
+        // Random UUIDs are already well mixed; fold and finalize anyway for crafted ones
+        long h = most ^ least;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
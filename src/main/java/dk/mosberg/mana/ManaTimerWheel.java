@@ -0,0 +1,234 @@
+package dk.mosberg.mana;
+
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.Mana;
+
+/**
+ * Hierarchical timing wheel keyed on {@link ManaClock} ticks. Scheduling and cancelling are O(1),
+ * and advancing costs O(1) per tick plus the timers that expire or cascade, however many timers
+ * are pending, so a million pending buffs cost no more per tick than ten.
+ *
+ * <p>
+ * The wheel has {@value #LEVELS} levels of {@value #SLOTS} slots. Level 0 holds timers due within
+ * the next {@value #SLOTS} ticks, one slot per tick; each level above covers {@value #SLOTS} times
+ * the span of the one below. When the lower level wraps around, the next slot of the level above
+ * is cascaded: its timers move down to the level that now matches their remaining delay. Timers
+ * further out than the top level can span are parked in its farthest slot and re-placed every
+ * time it cascades.
+ *
+ * <p>
+ * The wheel is thread-safe. Expired timers run on the thread that advances the wheel, after the
+ * wheel's lock is released, so actions may schedule and cancel timers.
+ */
+public final class ManaTimerWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    // Sentinel heads of the circular slot lists, level * SLOTS + slot
+    private final Timer[] slots = new Timer[LEVELS * SLOTS];
+    // The last tick processed
+    private long currentTick;
+    private int size;
+
+    /**
+     * Creates an empty wheel starting at a tick.
+     *
+     * @param startTick The tick the wheel starts at, usually {@link ManaClock#now()}
+     */
+    public ManaTimerWheel(long startTick) {
+        for (int i = 0; i < slots.length; i++) {
+            Timer head = new Timer(this, 0, null);
+            head.prev = head;
+            head.next = head;
+            slots[i] = head;
+        }
+        currentTick = startTick;
+    }
+
+    /**
+     * Schedules an action to run when the wheel advances to a tick. Ticks already reached run on
+     * the next advance.
+     *
+     * @param expiryTick The tick to run at
+     * @param action The action
+     * @return The timer, which can be cancelled
+     */
+    @NotNull
+    public synchronized Timer schedule(long expiryTick, @NotNull Runnable action) {
+        Timer timer = new Timer(this, expiryTick, action);
+        insert(timer, currentTick + 1);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Advances the wheel to a tick, running every timer due by then in expiry order. A failing
+     * action is logged and the remaining ones still run, since they are already off the wheel.
+     *
+     * @param tick The tick to advance to; earlier ticks are ignored
+     */
+    public void advance(long tick) {
+        Timer expired;
+        synchronized (this) {
+            expired = collect(tick);
+        }
+
+        // Run outside the lock; collected timers are chained through next
+        while (expired != null) {
+            Timer timer = expired;
+            expired = timer.next;
+            timer.next = null;
+            try {
+                timer.action.run();
+            } catch (RuntimeException e) {
+                Mana.LOGGER.error("Timer action due at tick {} failed", timer.expiryTick, e);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of pending timers.
+     *
+     * @return The timer count
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Cancels every pending timer.
+     */
+    public synchronized void clear() {
+        for (Timer head : slots) {
+            for (Timer timer = head.next; timer != head;) {
+                Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                timer = next;
+            }
+            head.prev = head;
+            head.next = head;
+        }
+        size = 0;
+    }
+
+    private Timer collect(long tick) {
+        Timer first = null;
+        Timer last = null;
+        while (currentTick < tick) {
+            currentTick++;
+            cascade();
+
+            Timer head = slots[(int) (currentTick & SLOT_MASK)];
+            while (head.next != head) {
+                Timer timer = head.next;
+                unlink(timer);
+                size--;
+                if (last == null) {
+                    first = timer;
+                } else {
+                    last.next = timer;
+                }
+                last = timer;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Moves the timers of each level's next slot down when the levels below wrapped around.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = level * SLOT_BITS;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+
+            Timer head = slots[level * SLOTS + (int) ((currentTick >>> shift) & SLOT_MASK)];
+            while (head.next != head) {
+                Timer timer = head.next;
+                unlink(timer);
+                // This tick's level 0 slot is processed after cascading
+                insert(timer, currentTick);
+            }
+        }
+    }
+
+    /**
+     * Links a timer into the slot matching its delay from the earliest tick not processed yet.
+     */
+    private void insert(Timer timer, long earliestTick) {
+        // Overdue timers run on the earliest tick
+        long tick = Math.max(timer.expiryTick, earliestTick);
+        long delay = tick - earliestTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= 1L << ((level + 1) * SLOT_BITS)) {
+            level++;
+        }
+        if (delay >= 1L << (LEVELS * SLOT_BITS)) {
+            // Beyond the wheel's span: park in the farthest top slot, re-placed when it cascades
+            tick = earliestTick + (1L << (LEVELS * SLOT_BITS)) - (1L << (level * SLOT_BITS));
+        }
+
+        int slot = (int) ((tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+        Timer head = slots[level * SLOTS + slot];
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+    }
+
+    private static void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    /**
+     * A scheduled action. Timers are nodes of the wheel's slot lists, which is what makes
+     * cancelling O(1).
+     */
+    public static final class Timer {
+        private final ManaTimerWheel wheel;
+        private final long expiryTick;
+        private final Runnable action;
+        private Timer prev;
+        private Timer next;
+
+        private Timer(ManaTimerWheel wheel, long expiryTick, Runnable action) {
+            this.wheel = wheel;
+            this.expiryTick = expiryTick;
+            this.action = action;
+        }
+
+        /**
+         * Gets the tick this timer runs at.
+         *
+         * @return The expiry tick
+         */
+        public long getExpiryTick() {
+            return expiryTick;
+        }
+
+        /**
+         * Cancels this timer.
+         *
+         * @return true if it was pending, false if it already ran or was cancelled
+         */
+        public boolean cancel() {
+            synchronized (wheel) {
+                if (prev == null) {
+                    return false;
+                }
+                unlink(this);
+                wheel.size--;
+                return true;
+            }
+        }
+    }
+}
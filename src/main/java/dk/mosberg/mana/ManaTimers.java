@@ -0,0 +1,54 @@
+package dk.mosberg.mana;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The server-wide {@link ManaTimerWheel}, advanced with {@link ManaClock}. Drives timed max
+ * modifiers ({@link ManaPool#applyMaxModifier(ManaPool.ManaPoolType, double, long)}) and
+ * {@link ManaCooldowns}, and is open to any other delayed mana logic.
+ */
+public final class ManaTimers {
+
+    private static final ManaTimerWheel WHEEL = new ManaTimerWheel(ManaClock.now());
+
+    private ManaTimers() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Schedules an action a number of server ticks from now. Actions run on the server thread.
+     *
+     * @param delayTicks The delay in ticks; zero or less runs on the next tick
+     * @param action The action
+     * @return The timer, which can be cancelled
+     */
+    @NotNull
+    public static ManaTimerWheel.Timer schedule(long delayTicks, @NotNull Runnable action) {
+        return WHEEL.schedule(ManaClock.now() + Math.max(0, delayTicks), action);
+    }
+
+    /**
+     * Runs every timer due by the current tick. Called once per server tick, after the clock
+     * advanced.
+     */
+    public static void tick() {
+        WHEEL.advance(ManaClock.now());
+    }
+
+    /**
+     * Gets the number of pending timers.
+     *
+     * @return The timer count
+     */
+    public static int pending() {
+        return WHEEL.size();
+    }
+
+    /**
+     * Cancels every pending timer and forgets all cooldowns. Called on server shutdown.
+     */
+    public static void clear() {
+        WHEEL.clear();
+        ManaCooldowns.clear();
+    }
+}
@@ -0,0 +1,387 @@
+package dk.mosberg.mana;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.mana.ManaPool.ManaPoolType;
+
+/**
+ * Applies several mana operations on one or more pools as a unit: either every operation succeeds
+ * or none has any effect. A spell that costs mana from a specific pool, drains a target and raises
+ * a max can be committed as one transaction, and each pool involved is settled once and records a
+ * single change however many operations touched it.
+ *
+ * <pre>{@code
+ * boolean cast = ManaTransaction.begin()
+ *         .consume(casterPool, ManaPoolType.SECONDARY, 40)
+ *         .transfer(targetPool, casterPool, 15)
+ *         .commit();
+ * }</pre>
+ *
+ * <p>
+ * Operations are recorded into primitive arrays that are reused across transactions, so a
+ * transaction allocates nothing once the arrays have grown to the largest transaction seen.
+ * {@link #begin()} hands out one instance per thread.
+ *
+ * <p>
+ * A commit holds the write lock of every pool involved, taken in a fixed order of store and lock
+ * stripe, so transactions may be committed from any thread and concurrent readers see either none
+ * or all of its operations.
+ */
+public final class ManaTransaction {
+
+    private static final ThreadLocal<ManaTransaction> CURRENT =
+            ThreadLocal.withInitial(ManaTransaction::new);
+
+    private static final int OP_CONSUME = 0;
+    private static final int OP_CONSUME_POOL = 1;
+    private static final int OP_RESTORE = 2;
+    private static final int OP_TRANSFER = 3;
+    private static final int OP_ADJUST_POOL_VALUE = 4;
+
+    private static final int NO_POOL = -1;
+    private static final int STATE_SIZE = ManaPoolStore.POOLS * 2;
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Recorded operations
+    private int[] ops = new int[INITIAL_CAPACITY];
+    private int[] poolTypes = new int[INITIAL_CAPACITY];
+    private double[] amounts = new double[INITIAL_CAPACITY];
+    private ManaPool[] sources = new ManaPool[INITIAL_CAPACITY];
+    private ManaPool[] targets = new ManaPool[INITIAL_CAPACITY];
+    private int size;
+
+    // Pools touched by the commit in progress, with their state before it for rollback
+    private ManaPool[] touched = new ManaPool[INITIAL_CAPACITY];
+    private double[] saved = new double[INITIAL_CAPACITY * STATE_SIZE];
+    private long[] savedTicks = new long[INITIAL_CAPACITY];
+    private int touchedCount;
+
+    // Change events of the commit in progress: one frame per touched pool, from firstFrame on
+    private boolean notify;
+    private int firstFrame = ManaChangeEvents.NO_FRAME;
+
+    // Stripes locked by the commit in progress, in lock order
+    private ManaPoolStore[] stores = new ManaPoolStore[2];
+    private int[] stripes = new int[2];
+    private long[] stamps = new long[2];
+    private int lockCount;
+
+    /**
+     * Creates an empty transaction. Callers that commit many transactions can keep one and reuse
+     * it; {@link #begin()} does that per thread.
+     */
+    public ManaTransaction() {
+    }
+
+    /**
+     * Gets this thread's transaction, emptied.
+     *
+     * @return The transaction
+     */
+    @NotNull
+    public static ManaTransaction begin() {
+        return CURRENT.get().clear();
+    }
+
+    // ==================== OPERATIONS ====================
+
+    /**
+     * Consumes mana in priority order (primary → secondary → tertiary), as
+     * {@link ManaPool#consumeMana}. Fails the transaction if the pool holds too little.
+     *
+     * @param pool The pool
+     * @param amount The amount, not negative
+     * @return This transaction
+     */
+    @NotNull
+    public ManaTransaction consume(@NotNull ManaPool pool, double amount) {
+        return add(OP_CONSUME, pool, null, NO_POOL, amount);
+    }
+
+    /**
+     * Consumes mana from one specific pool. Fails the transaction if that pool holds too little.
+     *
+     * @param pool The pool
+     * @param type The pool type to consume from
+     * @param amount The amount, not negative
+     * @return This transaction
+     */
+    @NotNull
+    public ManaTransaction consume(@NotNull ManaPool pool, @NotNull ManaPoolType type,
+            double amount) {
+        return add(OP_CONSUME_POOL, pool, null, type.ordinal(), amount);
+    }
+
+    /**
+     * Restores mana in priority order, as {@link ManaPool#restoreMana}. Never fails; what does
+     * not fit is lost.
+     *
+     * @param pool The pool
+     * @param amount The amount, not negative
+     * @return This transaction
+     */
+    @NotNull
+    public ManaTransaction restore(@NotNull ManaPool pool, double amount) {
+        return add(OP_RESTORE, pool, null, NO_POOL, amount);
+    }
+
+    /**
+     * Moves mana from one pool to another, as {@link ManaPool#shareMana}. Fails the transaction
+     * if the source holds too little.
+     *
+     * @param from The pool to take from
+     * @param to The pool to give to
+     * @param amount The amount, not negative
+     * @return This transaction
+     */
+    @NotNull
+    public ManaTransaction transfer(@NotNull ManaPool from, @NotNull ManaPool to, double amount) {
+        return add(OP_TRANSFER, from, to, NO_POOL, amount);
+    }
+
+    /**
+     * Changes a pool value (the permanent part of a max) by a delta. Growth also fills the new
+     * capacity, as {@link ManaPool#increasePoolValue}; shrinking clamps current mana. Fails the
+     * transaction if the pool value would become negative.
+     *
+     * @param pool The pool
+     * @param type The pool type
+     * @param delta The change, positive or negative
+     * @return This transaction
+     */
+    @NotNull
+    public ManaTransaction adjustPoolValue(@NotNull ManaPool pool, @NotNull ManaPoolType type,
+            double delta) {
+        return add(OP_ADJUST_POOL_VALUE, pool, null, type.ordinal(), delta);
+    }
+
+    private ManaTransaction add(int op, ManaPool source, ManaPool target, int poolType,
+            double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)
+                || (op != OP_ADJUST_POOL_VALUE && amount < 0)) {
+            throw new IllegalArgumentException("Invalid mana amount: " + amount);
+        }
+
+        if (size == ops.length) {
+            int capacity = size * 2;
+            ops = Arrays.copyOf(ops, capacity);
+            poolTypes = Arrays.copyOf(poolTypes, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+        }
+
+        ops[size] = op;
+        poolTypes[size] = poolType;
+        amounts[size] = amount;
+        sources[size] = source;
+        targets[size] = target;
+        size++;
+        return this;
+    }
+
+    // ==================== COMMIT ====================
+
+    /**
+     * Applies every recorded operation in order, or none if any fails, and empties the
+     * transaction either way. {@link ManaChangeEvents} listeners are notified of the net change of
+     * each pool once every lock is released.
+     *
+     * @return true if all operations were applied
+     */
+    public boolean commit() {
+        lockSlots();
+        notify = ManaChangeEvents.hasListeners();
+        firstFrame = ManaChangeEvents.NO_FRAME;
+        try {
+            for (int i = 0; i < size; i++) {
+                if (!apply(i)) {
+                    rollback();
+                    return false;
+                }
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                touched[i].commitChange();
+            }
+            return true;
+        } finally {
+            if (firstFrame != ManaChangeEvents.NO_FRAME) {
+                for (int i = 0; i < touchedCount; i++) {
+                    touched[i].recordAfter(firstFrame + i);
+                }
+            }
+            unlockSlots();
+            int frame = firstFrame;
+            clear();
+            // Last, so listeners may start transactions of their own
+            ManaChangeEvents.fire(frame);
+        }
+    }
+
+    /**
+     * Discards the recorded operations.
+     *
+     * @return This transaction
+     */
+    @NotNull
+    public ManaTransaction clear() {
+        Arrays.fill(sources, 0, size, null);
+        Arrays.fill(targets, 0, size, null);
+        Arrays.fill(touched, 0, touchedCount, null);
+        size = 0;
+        touchedCount = 0;
+        return this;
+    }
+
+    /**
+     * Gets the number of recorded operations.
+     *
+     * @return The operation count
+     */
+    public int size() {
+        return size;
+    }
+
+    private boolean apply(int i) {
+        ManaPool source = touch(sources[i]);
+        double amount = amounts[i];
+        return switch (ops[i]) {
+            case OP_CONSUME -> source.take(amount);
+            case OP_CONSUME_POOL -> source.take(poolTypes[i], amount);
+            case OP_RESTORE -> {
+                source.give(amount);
+                yield true;
+            }
+            case OP_TRANSFER -> {
+                ManaPool target = touch(targets[i]);
+                if (!source.take(amount)) {
+                    yield false;
+                }
+                target.give(amount);
+                yield true;
+            }
+            case OP_ADJUST_POOL_VALUE -> source.adjustPoolValue(poolTypes[i], amount);
+            default -> throw new IllegalStateException("Unknown operation " + ops[i]);
+        };
+    }
+
+    /**
+     * Saves a pool's state and settles it the first time the commit touches it. Its values are
+     * recorded before settling, so the change reported includes regeneration since it was last
+     * materialized.
+     */
+    private ManaPool touch(ManaPool pool) {
+        // Transactions touch a handful of pools, so a scan beats hashing
+        for (int i = 0; i < touchedCount; i++) {
+            if (touched[i] == pool) {
+                return pool;
+            }
+        }
+
+        if (touchedCount == touched.length) {
+            touched = Arrays.copyOf(touched, touchedCount * 2);
+            saved = Arrays.copyOf(saved, touchedCount * 2 * STATE_SIZE);
+            savedTicks = Arrays.copyOf(savedTicks, touchedCount * 2);
+        }
+        if (notify) {
+            int frame = pool.recordBefore();
+            if (firstFrame == ManaChangeEvents.NO_FRAME) {
+                firstFrame = frame;
+            }
+        }
+        savedTicks[touchedCount] = pool.saveState(saved, touchedCount * STATE_SIZE);
+        pool.settle();
+        touched[touchedCount++] = pool;
+        return pool;
+    }
+
+    /**
+     * Write-locks the slot of every pool involved, ordered by store id and then stripe so that
+     * concurrent commits cannot deadlock. Retries if a pool was detached into another store
+     * meanwhile.
+     */
+    private void lockSlots() {
+        while (true) {
+            lockCount = 0;
+            for (int i = 0; i < size; i++) {
+                addLock(sources[i]);
+                if (targets[i] != null) {
+                    addLock(targets[i]);
+                }
+            }
+            for (int i = 0; i < lockCount; i++) {
+                stamps[i] = stores[i].stripeLock(stripes[i]).writeLock();
+            }
+            if (storesCurrent()) {
+                return;
+            }
+            unlockSlots();
+        }
+    }
+
+    private void addLock(ManaPool pool) {
+        ManaPoolStore store = pool.store();
+        int stripe = store.stripe(pool.slot());
+        if (holds(store, stripe)) {
+            return;
+        }
+
+        if (lockCount == stores.length) {
+            stores = Arrays.copyOf(stores, lockCount * 2);
+            stripes = Arrays.copyOf(stripes, lockCount * 2);
+            stamps = Arrays.copyOf(stamps, lockCount * 2);
+        }
+        // Insertion sort; commits touch one or two pools in the common case
+        int index = lockCount++;
+        while (index > 0 && (stores[index - 1].id > store.id
+                || (stores[index - 1] == store && stripes[index - 1] > stripe))) {
+            stores[index] = stores[index - 1];
+            stripes[index] = stripes[index - 1];
+            index--;
+        }
+        stores[index] = store;
+        stripes[index] = stripe;
+    }
+
+    private boolean storesCurrent() {
+        for (int i = 0; i < size; i++) {
+            if (!holds(sources[i]) || (targets[i] != null && !holds(targets[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a pool's slot is locked. A pool's store and slot only change while every
+     * stripe of its store is held, so once its stripe is locked they stay put.
+     */
+    private boolean holds(ManaPool pool) {
+        ManaPoolStore store = pool.store();
+        return holds(store, store.stripe(pool.slot()));
+    }
+
+    private boolean holds(ManaPoolStore store, int stripe) {
+        for (int i = 0; i < lockCount; i++) {
+            if (stores[i] == store && stripes[i] == stripe) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void unlockSlots() {
+        for (int i = lockCount - 1; i >= 0; i--) {
+            stores[i].stripeLock(stripes[i]).unlockWrite(stamps[i]);
+            stores[i] = null;
+        }
+        lockCount = 0;
+    }
+
+    private void rollback() {
+        for (int i = 0; i < touchedCount; i++) {
+            touched[i].restoreState(saved, i * STATE_SIZE, savedTicks[i]);
+        }
+    }
+}
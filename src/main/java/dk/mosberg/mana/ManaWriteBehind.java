@@ -0,0 +1,304 @@
+package dk.mosberg.mana;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import dk.mosberg.Mana;
+import dk.mosberg.config.ManaConfig;
+
+/**
+ * Write-behind persistence for all {@link ManaComponent}s. At every flush interval the server
+ * thread copies the state of dirty pools into one compact buffer of fixed-size records; a
+ * background thread writes that batch into the memory-mapped {@link ManaRecordFile} and forces it
+ * to disk. Player saves no longer serialize mana, and a crash loses at most one flush interval of
+ * changes.
+ *
+ * <p>
+ * Because every player who ever persisted mana has a record, offline players can be inspected
+ * and edited without loading their player data.
+ */
+public final class ManaWriteBehind {
+
+    private static final String RECORD_FILE = "players.dat";
+    private static final int ENTRY_BYTES = 2 * Long.BYTES + ManaPool.RECORD_BYTES;
+    private static final int TICKS_PER_SECOND = 20;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    // Records staged on the server thread that the writer has not stored yet
+    private static final Map<UUID, byte[]> PENDING = new ConcurrentHashMap<>();
+
+    private static ExecutorService writer;
+    private static ManaRecordFile records;
+    private static ByteBuffer staging = ByteBuffer.allocate(ENTRY_BYTES * 64);
+    private static int ticksSinceFlush;
+
+    private ManaWriteBehind() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    // ==================== LIFECYCLE ====================
+
+    /**
+     * Opens the record file in a directory and starts the writer thread.
+     *
+     * @param directory The directory holding the record file
+     * @throws IOException If the record file cannot be opened
+     */
+    public static synchronized void start(@NotNull Path directory) throws IOException {
+        if (writer != null) {
+            return;
+        }
+
+        Files.createDirectories(directory);
+        records = ManaRecordFile.open(directory.resolve(RECORD_FILE));
+
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Mana Write-Behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticksSinceFlush = 0;
+        Mana.LOGGER.info("Opened {} persisted mana records", records.size());
+    }
+
+    /**
+     * Flushes everything that is dirty, waits for the writer and closes the record file.
+     */
+    public static synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+
+        flush();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                Mana.LOGGER.error("Timed out flushing mana records");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            records.close();
+        } catch (IOException e) {
+            Mana.LOGGER.error("Failed to close mana record file", e);
+        }
+        writer = null;
+        records = null;
+        PENDING.clear();
+    }
+
+    /**
+     * Checks whether the write-behind store is persisting player mana.
+     *
+     * @return true between {@link #start(Path)} and {@link #stop()}
+     */
+    public static boolean isRunning() {
+        return writer != null;
+    }
+
+    // ==================== FLUSHING ====================
+
+    /**
+     * Counts server ticks and flushes once the configured interval has passed. Server thread
+     * only.
+     */
+    public static void tick() {
+        if (writer == null) {
+            return;
+        }
+
+        int interval = Math.max(1,
+                (int) Math.round(ManaConfig.getFlushIntervalSeconds() * TICKS_PER_SECOND));
+        if (++ticksSinceFlush >= interval) {
+            ticksSinceFlush = 0;
+            flush();
+        }
+    }
+
+    /**
+     * Stages every dirty pool and hands the batch to the writer. Server thread only.
+     */
+    public static void flush() {
+        if (writer == null) {
+            return;
+        }
+
+        for (ManaComponent component : ManaComponents.all()) {
+            stage(component.getPlayerId(), component.getManaPool());
+        }
+        submit();
+    }
+
+    /**
+     * Stages a single pool if it is dirty and hands the batch to the writer, e.g. before its
+     * component is removed. Server thread only.
+     *
+     * @param playerId The owning player's UUID
+     * @param pool The pool
+     */
+    static void flush(@NotNull UUID playerId, @NotNull ManaPool pool) {
+        if (writer == null) {
+            return;
+        }
+
+        stage(playerId, pool);
+        submit();
+    }
+
+    /**
+     * Appends a pool's record to the staging buffer if it changed since it was last persisted.
+     */
+    private static void stage(UUID playerId, ManaPool pool) {
+        if (!pool.isDirty()) {
+            return;
+        }
+
+        if (staging.remaining() < ENTRY_BYTES) {
+            staging = ByteBuffer.allocate(staging.capacity() * 2).put(staging.flip());
+        }
+        staging.putLong(playerId.getMostSignificantBits());
+        staging.putLong(playerId.getLeastSignificantBits());
+        int recordStart = staging.position();
+        pool.writeRecord(staging);
+        pool.clearDirty();
+        PENDING.put(playerId, Arrays.copyOfRange(staging.array(), recordStart,
+                recordStart + ManaPool.RECORD_BYTES));
+    }
+
+    /**
+     * Copies the staged entries into one batch and queues it for the writer.
+     */
+    private static void submit() {
+        if (staging.position() == 0) {
+            return;
+        }
+
+        byte[] batch = Arrays.copyOf(staging.array(), staging.position());
+        staging.clear();
+        ManaRecordFile target = records;
+        CompletableFuture.runAsync(() -> store(target, batch), writer).exceptionally(error -> {
+            Mana.LOGGER.error("Failed to write mana records", error);
+            return null;
+        });
+    }
+
+    /**
+     * Writes a staged batch into the record file. Writer thread only.
+     */
+    private static void store(ManaRecordFile target, byte[] batch) {
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+            UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+            int recordStart = buffer.position();
+            target.write(playerId, buffer);
+
+            // Unless a newer record was staged meanwhile, the file is now up to date
+            PENDING.computeIfPresent(playerId,
+                    (id, pending) -> Arrays.equals(pending, 0, pending.length, batch, recordStart,
+                            recordStart + ManaPool.RECORD_BYTES) ? null : pending);
+        }
+        target.force();
+    }
+
+    // ==================== RESTORING ====================
+
+    /**
+     * Restores a player's persisted record into a pool.
+     *
+     * @param playerId The player's UUID
+     * @param pool The pool to restore into
+     * @return true if a record existed
+     */
+    static boolean restore(@NotNull UUID playerId, @NotNull ManaPool pool) {
+        ManaRecordFile source = records;
+        if (source == null) {
+            return false;
+        }
+
+        byte[] pending = PENDING.get(playerId);
+        if (pending != null) {
+            pool.readRecord(ByteBuffer.wrap(pending));
+            return true;
+        }
+        return source.readInto(playerId, pool);
+    }
+
+    // ==================== OFFLINE ACCESS ====================
+
+    /**
+     * Reads a player's persisted mana without loading their player data. For online players the
+     * live pool from {@link ManaComponents} is authoritative instead.
+     *
+     * @param playerId The player's UUID
+     * @return A detached copy of the persisted pool, or null if the player has no record
+     */
+    @Nullable
+    public static ManaPool readOffline(@NotNull UUID playerId) {
+        ManaPool pool = new ManaPool();
+        return restore(playerId, pool) ? pool : null;
+    }
+
+    /**
+     * Edits a player's persisted mana without loading their player data. The edit runs on the
+     * writer thread, after every batch staged before it, against a detached copy of the record
+     * that is written back afterwards.
+     *
+     * @param playerId The player's UUID
+     * @param edit The edit to apply
+     * @return A future completing with true if the player had a record, or false if not
+     */
+    @NotNull
+    public static CompletableFuture<Boolean> editOffline(@NotNull UUID playerId,
+            @NotNull Consumer<ManaPool> edit) {
+        ManaRecordFile target = records;
+        if (target == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            ManaPool pool = new ManaPool();
+            if (!target.readInto(playerId, pool)) {
+                return false;
+            }
+
+            edit.accept(pool);
+            target.writeFrom(playerId, pool);
+            target.force();
+            return true;
+        }, writer);
+    }
+
+    /**
+     * Gets the number of players with a persisted record.
+     *
+     * @return The record count, or 0 if the store is not running
+     */
+    public static int recordCount() {
+        ManaRecordFile source = records;
+        return source != null ? source.size() : 0;
+    }
+
+    /**
+     * Gets the size of the memory-mapped record file.
+     *
+     * @return The mapped size in bytes, or 0 if the store is not running
+     */
+    public static long mappedBytes() {
+        ManaRecordFile source = records;
+        return source != null ? source.mappedBytes() : 0;
+    }
+}
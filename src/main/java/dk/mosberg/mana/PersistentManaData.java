@@ -0,0 +1,104 @@
+package dk.mosberg.mana;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import com.mojang.serialization.Codec;
+import net.minecraft.nbt.NbtCompound;
+
+/**
+ * Persisted form of a player's mana, stored as a data attachment on the player entity. While bound
+ * to a live {@link ManaPool} it encodes that pool, re-serializing only when the pool is dirty and
+ * otherwise handing back the compound written last time, so autosaves skip unchanged players.
+ *
+ * <p>
+ * Encoding has no effect on the pool: the codec also runs for entity copies and debug dumps, and
+ * an encoded compound is not yet on disk. The pool is only marked clean by {@link #confirmSaved()}
+ * once the server finished saving, and only if it did not change since it was encoded.
+ */
+public final class PersistentManaData {
+
+    public static final Codec<PersistentManaData> CODEC =
+            NbtCompound.CODEC.xmap(PersistentManaData::new, PersistentManaData::encode);
+
+    @Nullable
+    private ManaPool pool;
+    @Nullable
+    private NbtCompound encoded;
+    // Dirty version of the bound pool when it was last encoded
+    private int encodedVersion;
+
+    /**
+     * Creates data loaded from disk, not yet bound to a pool.
+     *
+     * @param encoded The persisted pool compound
+     */
+    private PersistentManaData(@NotNull NbtCompound encoded) {
+        this.encoded = encoded;
+    }
+
+    /**
+     * Creates data bound to a live pool.
+     *
+     * @param pool The pool to persist
+     */
+    PersistentManaData(@NotNull ManaPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Restores the persisted state into a pool and binds to it, if this data came from disk and
+     * is not bound yet.
+     *
+     * @param pool The pool to restore into
+     * @return true if state was restored
+     */
+    boolean restoreInto(@NotNull ManaPool pool) {
+        if (this.pool != null || encoded == null) {
+            return false;
+        }
+
+        pool.readNbt(encoded);
+        this.pool = pool;
+        return true;
+    }
+
+    /**
+     * Binds this data to a live pool, which is authoritative from now on.
+     *
+     * @param pool The pool to persist
+     */
+    void bind(@NotNull ManaPool pool) {
+        if (this.pool == pool) {
+            return;
+        }
+
+        // The cached compound no longer describes the pool
+        this.pool = pool;
+        encoded = null;
+    }
+
+    /**
+     * Encodes the bound pool, reusing the last compound while the pool is clean. The cached
+     * compound is replaced, never modified, so handing it out is safe.
+     */
+    @NotNull
+    private NbtCompound encode() {
+        ManaPool pool = this.pool;
+        if (pool != null && (encoded == null || pool.isDirty())) {
+            encodedVersion = pool.dirtyVersion();
+            encoded = pool.writeNbt(new NbtCompound());
+        }
+        return encoded != null ? encoded : new NbtCompound();
+    }
+
+    /**
+     * Marks the bound pool clean after the player data holding its last encoding was saved, unless
+     * it changed since.
+     */
+    void confirmSaved() {
+        ManaPool pool = this.pool;
+        if (pool != null && encoded != null) {
+            pool.clearDirty(encodedVersion);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package dk.mosberg.network;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.mana.ManaClock;
+import dk.mosberg.mana.ManaComponent;
+import dk.mosberg.mana.ManaComponents;
+import dk.mosberg.mana.ManaPool;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+/**
+ * Sends each player their own mana. Regeneration is deterministic, so the client extrapolates it
+ * from the last values it was sent, and the server only sends corrections:
+ *
+ * <ul>
+ * <li>after a mutation ({@link ManaPool#pollChanged()}), the fields whose value differs, at wire
+ * precision, from what the client is predicted to show;</li>
+ * <li>when the regenerating flag flips, every current value, as a new baseline;</li>
+ * <li>when the client's extrapolation may have drifted more than {@value #DRIFT_THRESHOLD} mana.
+ * The client extrapolates on its own clock, which runs ahead while the server lags, so drift is
+ * estimated from wall time against server ticks since each value was sent.</li>
+ * </ul>
+ *
+ * <p>
+ * A refilling pool therefore costs no traffic on a healthy server. Joins and respawns get a full
+ * resync.
+ *
+ * <p>
+ * How often a player is checked adapts to load. While the server runs slower than
+ * {@value #HEALTHY_MSPT} ms per tick every player is checked less often, and a player whose mana
+ * changes on most checks is additionally held to about one update per half round trip. Changes
+ * between checks merge into the next correction, and skipped players cost no tick time. Isolated
+ * changes on a healthy server still go out on the tick they happen.
+ *
+ * <p>
+ * All methods are called on the server thread.
+ */
+public final class ManaSync {
+
+    private static final double DRIFT_THRESHOLD = 0.5;
+    private static final int TICKS_PER_SECOND = 20;
+    private static final long NANOS_PER_TICK = 1_000_000_000L / TICKS_PER_SECOND;
+    private static final int MILLIS_PER_TICK = 1000 / TICKS_PER_SECOND;
+    private static final int POOLS = 3;
+
+    // Adaptive sync interval
+    private static final double HEALTHY_MSPT = 40.0;
+    private static final double MSPT_PER_EXTRA_TICK = 10.0;
+    private static final int MAX_INTERVAL = 20;
+    private static final double BUSY_CHANGE_RATE = 0.25;
+    private static final double CHANGE_RATE_SMOOTHING = 0.2;
+
+    private static final double[] REGEN_RATES = {ManaPool.REGEN_RATE_PRIMARY,
+            ManaPool.REGEN_RATE_SECONDARY, ManaPool.REGEN_RATE_TERTIARY};
+
+    private static final Map<UUID, SyncState> STATES = new HashMap<>();
+
+    // Scratch buffers for the values of the player being compared
+    private static final double[] SNAPSHOT = new double[ManaSyncPayload.FIELDS];
+    private static final long[] CURRENT = new long[ManaSyncPayload.FIELDS];
+
+    private static int loadInterval = 1;
+
+    private ManaSync() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Registers the sync payload type. Called once during mod initialization.
+     */
+    public static void register() {
+        PayloadTypeRegistry.playS2C().register(ManaSyncPayload.ID, ManaSyncPayload.CODEC);
+    }
+
+    /**
+     * Schedules a full resync for a player, sent with the next {@link #tick}.
+     *
+     * @param player The player
+     */
+    public static void resync(@NotNull ServerPlayerEntity player) {
+        state(player.getUuid()).full = true;
+    }
+
+    /**
+     * Drops the sync state of a departing player.
+     *
+     * @param player The player
+     */
+    public static void forget(@NotNull ServerPlayerEntity player) {
+        STATES.remove(player.getUuid());
+    }
+
+    /**
+     * Clears all sync state. Called on server shutdown.
+     */
+    public static void clear() {
+        STATES.clear();
+    }
+
+    /**
+     * Sends pending corrections to every online player that is due. Called once per server tick.
+     *
+     * @param server The server
+     */
+    public static void tick(@NotNull MinecraftServer server) {
+        long now = ManaClock.now();
+        long nanos = System.nanoTime();
+        loadInterval = loadInterval(server.getAverageNanosPerTick() / 1_000_000.0);
+
+        for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+            SyncState state = state(player.getUuid());
+            if (!state.full && now < state.nextCheck) {
+                continue;
+            }
+
+            ManaComponent component = ManaComponents.getIfExists(player);
+            if (component == null || !ServerPlayNetworking.canSend(player, ManaSyncPayload.ID)) {
+                continue;
+            }
+
+            ManaSyncPayload payload = state.update(component.getManaPool(), now, nanos);
+            if (payload != null) {
+                ServerPlayNetworking.send(player, payload);
+            }
+            state.nextCheck = now + state.interval(player.networkHandler.getLatency());
+        }
+    }
+
+    /**
+     * Gets the check interval currently applied to every player because of server load.
+     *
+     * @return The interval in ticks, 1 on a healthy server
+     */
+    public static int getLoadInterval() {
+        return loadInterval;
+    }
+
+    /**
+     * Derives the load part of the check interval: one tick while the server is healthy, one more
+     * tick per {@value #MSPT_PER_EXTRA_TICK} ms beyond {@value #HEALTHY_MSPT} ms per tick.
+     */
+    private static int loadInterval(double mspt) {
+        if (mspt <= HEALTHY_MSPT) {
+            return 1;
+        }
+        return (int) Math.min(MAX_INTERVAL, 2 + (mspt - HEALTHY_MSPT) / MSPT_PER_EXTRA_TICK);
+    }
+
+    private static SyncState state(UUID playerId) {
+        return STATES.computeIfAbsent(playerId, id -> new SyncState());
+    }
+
+    /**
+     * What a player was last sent, which is the baseline the client extrapolates from.
+     */
+    private static final class SyncState {
+        final long[] sent = new long[ManaSyncPayload.FIELDS];
+        final long[] sentTick = new long[POOLS];
+        final long[] sentNanos = new long[POOLS];
+        boolean regenerating;
+        boolean full = true;
+        long nextCheck;
+        double changeRate;
+
+        /**
+         * Gets the ticks until this player's next check. Players whose mana changes on most checks
+         * are also held to about one update per half round trip, since sending faster than that
+         * only queues packets behind each other.
+         *
+         * @param latencyMillis The player's ping
+         */
+        int interval(int latencyMillis) {
+            int interval = loadInterval;
+            if (changeRate >= BUSY_CHANGE_RATE) {
+                interval = Math.max(interval, latencyMillis / 2 / MILLIS_PER_TICK);
+            }
+            return Math.max(1, Math.min(MAX_INTERVAL, interval));
+        }
+
+        /**
+         * Compares a pool with what the client is predicted to show and records the corrections
+         * as sent.
+         *
+         * @return A payload with the corrected fields, or null if the client is up to date
+         */
+        ManaSyncPayload update(ManaPool pool, long now, long nanos) {
+            // Poll first so the mark never survives into a later check
+            boolean changed = pool.pollChanged();
+            changeRate += ((changed ? 1.0 : 0.0) - changeRate) * CHANGE_RATE_SMOOTHING;
+            // One snapshot, so the flag and all six values come from the same write
+            boolean currentRegenerating = pool.snapshot(SNAPSHOT);
+            boolean rebase = full || currentRegenerating != regenerating;
+            if (!changed && !rebase && !drifted(now, nanos)) {
+                return null;
+            }
+
+            for (int field = 0; field < ManaSyncPayload.FIELDS; field++) {
+                CURRENT[field] = ManaSyncPayload.quantize(SNAPSHOT[field]);
+            }
+
+            int mask = 0;
+            for (int field = POOLS; field < ManaSyncPayload.FIELDS; field++) {
+                if (full || CURRENT[field] != sent[field]) {
+                    mask |= 1 << field;
+                }
+            }
+            // Predictions use the maxima being sent, as the client will
+            for (int field = 0; field < POOLS; field++) {
+                double max = CURRENT[field + POOLS] / ManaSyncPayload.SCALE;
+                if (rebase || drifted(field, now, nanos) || CURRENT[field] != ManaSyncPayload
+                        .quantize(predict(field, now, max))) {
+                    mask |= 1 << field;
+                }
+            }
+            if (rebase) {
+                mask |= ManaSyncPayload.REGENERATING;
+            }
+            if (mask == 0) {
+                return null;
+            }
+
+            if (currentRegenerating) {
+                mask |= ManaSyncPayload.REGENERATING_ON;
+            }
+            for (int field = 0; field < ManaSyncPayload.FIELDS; field++) {
+                if ((mask & 1 << field) != 0) {
+                    sent[field] = CURRENT[field];
+                    if (field < POOLS) {
+                        sentTick[field] = now;
+                        sentNanos[field] = nanos;
+                    }
+                }
+            }
+            regenerating = currentRegenerating;
+            full = false;
+            return new ManaSyncPayload(mask, CURRENT.clone());
+        }
+
+        /**
+         * Predicts the client's value of a pool: its baseline, regenerated over the server ticks
+         * since it was sent.
+         */
+        private double predict(int pool, long now, double max) {
+            double base = sent[pool] / ManaSyncPayload.SCALE;
+            if (!regenerating) {
+                return base;
+            }
+            return ManaPool.regenerate(base, max, REGEN_RATES[pool], now - sentTick[pool]);
+        }
+
+        private boolean drifted(long now, long nanos) {
+            if (!regenerating) {
+                return false;
+            }
+            for (int pool = 0; pool < POOLS; pool++) {
+                if (drifted(pool, now, nanos)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Estimates whether the client's extrapolation of a pool has drifted too far. The client
+         * advances one tick per 50 ms of wall time, the server one tick per tick; a still-filling
+         * pool is off by the difference times the regeneration rate. Maxima cannot change without
+         * a mutation, so the last sent ones apply.
+         */
+        private boolean drifted(int pool, long now, long nanos) {
+            double max = sent[pool + POOLS] / ManaSyncPayload.SCALE;
+            if (!regenerating || predict(pool, now, max) >= max) {
+                return false;
+            }
+            double clientTicks = (double) (nanos - sentNanos[pool]) / NANOS_PER_TICK;
+            double lag = Math.abs(clientTicks - (now - sentTick[pool]));
+            return lag * REGEN_RATES[pool] / TICKS_PER_SECOND > DRIFT_THRESHOLD;
+        }
+    }
+}
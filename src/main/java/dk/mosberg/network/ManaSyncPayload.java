@@ -0,0 +1,110 @@
+package dk.mosberg.network;
+
+import org.jetbrains.annotations.NotNull;
+import dk.mosberg.Mana;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+
+/**
+ * Server-to-client update of the receiving player's own mana. Only changed fields are on the wire:
+ * a one-byte mask says which of the six values and the regenerating flag follow, and each value is
+ * a var-long of hundredths of a point of mana, so small pools cost one to three bytes per value.
+ *
+ * <p>
+ * Fields absent from the mask read back as zero and must be left unchanged by the receiver. A
+ * payload with {@link #FULL} set carries every field and replaces the receiver's state.
+ *
+ * @param mask The fields present, as {@code 1 << field} bits plus the flag bits below
+ * @param values Quantized values indexed by field; only fields in the mask are meaningful
+ */
+public record ManaSyncPayload(int mask, @NotNull long[] values) implements CustomPayload {
+
+    public static final CustomPayload.Id<ManaSyncPayload> ID =
+            new CustomPayload.Id<>(Mana.id("sync"));
+    public static final PacketCodec<PacketByteBuf, ManaSyncPayload> CODEC =
+            PacketCodec.of(ManaSyncPayload::write, ManaSyncPayload::read);
+
+    // Value fields
+    public static final int PRIMARY = 0;
+    public static final int SECONDARY = 1;
+    public static final int TERTIARY = 2;
+    public static final int PRIMARY_MAX = 3;
+    public static final int SECONDARY_MAX = 4;
+    public static final int TERTIARY_MAX = 5;
+    public static final int FIELDS = 6;
+
+    /** The regenerating flag is present. */
+    public static final int REGENERATING = 1 << FIELDS;
+    /** Value of the regenerating flag, when {@link #REGENERATING} is set. */
+    public static final int REGENERATING_ON = 1 << (FIELDS + 1);
+    /** Every value and the regenerating flag are present. */
+    public static final int FULL = (1 << FIELDS) - 1 | REGENERATING;
+
+    /** Quantization steps per point of mana. */
+    public static final double SCALE = 100.0;
+
+    /**
+     * Quantizes a mana value for the wire.
+     *
+     * @param value The mana value
+     * @return The quantized value
+     */
+    public static long quantize(double value) {
+        return Math.round(Math.max(0.0, value) * SCALE);
+    }
+
+    /**
+     * Checks whether a field or flag is present.
+     *
+     * @param bits A {@code 1 << field} bit or a flag bit
+     * @return true if every given bit is set in the mask
+     */
+    public boolean has(int bits) {
+        return (mask & bits) == bits;
+    }
+
+    /**
+     * Gets a field's value in points of mana.
+     *
+     * @param field The field index
+     * @return The value, or 0 if the field is absent
+     */
+    public double value(int field) {
+        return values[field] / SCALE;
+    }
+
+    /**
+     * Gets the regenerating flag.
+     *
+     * @return The flag, meaningful only when {@link #REGENERATING} is set
+     */
+    public boolean regenerating() {
+        return (mask & REGENERATING_ON) != 0;
+    }
+
+    private void write(PacketByteBuf buf) {
+        buf.writeByte(mask);
+        for (int field = 0; field < FIELDS; field++) {
+            if ((mask & 1 << field) != 0) {
+                buf.writeVarLong(values[field]);
+            }
+        }
+    }
+
+    private static ManaSyncPayload read(PacketByteBuf buf) {
+        int mask = buf.readUnsignedByte();
+        long[] values = new long[FIELDS];
+        for (int field = 0; field < FIELDS; field++) {
+            if ((mask & 1 << field) != 0) {
+                values[field] = buf.readVarLong();
+            }
+        }
+        return new ManaSyncPayload(mask, values);
+    }
+
+    @Override
+    public CustomPayload.Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
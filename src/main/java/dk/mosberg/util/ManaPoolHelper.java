@@ -129,13 +129,15 @@ public final class ManaPoolHelper {
     }
 
     /**
-     * Gets the ManaPool for a player (helper method).
+     * Gets the ManaPool for a player. Resolve pools once with this and combine several operations
+     * in a {@link dk.mosberg.mana.ManaTransaction} rather than calling the per-player helpers
+     * repeatedly.
      *
      * @param player The player
      * @return The player's ManaPool, or null if unavailable
      */
     @Nullable
-    private static ManaPool getManaPool(@NotNull PlayerEntity player) {
+    public static ManaPool getManaPool(@NotNull PlayerEntity player) {
         if (player instanceof ServerPlayerEntity serverPlayer) {
             var component = dk.mosberg.Mana.getManaComponent(serverPlayer);
             return component != null ? component.getManaPool() : null;
@@ -161,6 +163,18 @@ public final class ManaPoolHelper {
             return "";
         }
 
+        return formatMana(pool, type);
+    }
+
+    /**
+     * Formats mana display string (e.g., "120 / 250") for a pool.
+     *
+     * @param pool The mana pool
+     * @param type The pool type to format
+     * @return Formatted string
+     */
+    @NotNull
+    public static String formatMana(@NotNull ManaPool pool, @NotNull ManaPoolType type) {
         return switch (type) {
             case PRIMARY -> String.format("%.0f / %.0f", pool.getPrimaryMana(),
                     pool.getPrimaryMax());
@@ -0,0 +1,180 @@
+package dk.mosberg.simulator;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import dk.mosberg.mana.ManaClock;
+import dk.mosberg.mana.ManaComponent;
+import dk.mosberg.mana.ManaComponents;
+import dk.mosberg.mana.ManaPool;
+import dk.mosberg.mana.ManaPool.ManaPoolType;
+import dk.mosberg.mana.ManaPoolStore;
+
+/**
+ * Headless load simulator for the mana core. Creates synthetic players in the shared
+ * {@link ManaComponents} store and drives them with a configurable mix of consumption,
+ * restoration, modifier changes and regeneration ticks, without a Minecraft client, server or
+ * network.
+ *
+ * <p>
+ * Reports per-tick wall time (mean, p50, p99, max), the share of a 50 ms tick budget, and bytes
+ * allocated per tick on the driving thread.
+ *
+ * <pre>
+ * ./gradlew runManaSimulation -PsimArgs="--players 1000 --ticks 1200 --eager"
+ * </pre>
+ */
+public final class ManaLoadSimulator {
+
+    private static final double TICK_BUDGET_NANOS = 50_000_000.0;
+    private static final ManaPoolType[] POOL_TYPES = ManaPoolType.values();
+
+    private final Settings settings;
+    private final SplittableRandom random;
+    private final ManaPool[] pools;
+
+    private ManaLoadSimulator(Settings settings) {
+        this.settings = settings;
+        this.random = new SplittableRandom(settings.seed);
+        this.pools = new ManaPool[settings.players];
+    }
+
+    public static void main(String[] args) {
+        Settings settings = Settings.parse(args);
+        new ManaLoadSimulator(settings).run();
+    }
+
+    private void run() {
+        // Synthetic players share the component store but stay out of the player registry
+        for (int i = 0; i < pools.length; i++) {
+            pools[i] = new ManaComponent(new UUID(0L, i)).getManaPool();
+        }
+
+        for (int tick = 0; tick < settings.warmupTicks; tick++) {
+            runTick();
+        }
+
+        long[] samples = new long[settings.ticks];
+        long allocatedBefore = allocatedBytes();
+        for (int tick = 0; tick < settings.ticks; tick++) {
+            long start = System.nanoTime();
+            runTick();
+            samples[tick] = System.nanoTime() - start;
+        }
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        report(samples, allocated);
+    }
+
+    /**
+     * Runs one simulated server tick: advance the clock, regenerate (eager mode only), then apply
+     * the workload to every player.
+     */
+    private void runTick() {
+        ManaClock.advance();
+        if (settings.eager) {
+            ManaComponents.tickActive();
+        }
+
+        for (ManaPool pool : pools) {
+            double roll = random.nextDouble();
+            if (roll < settings.consumeRate) {
+                pool.consumeMana(random.nextDouble(settings.maxAmount));
+            } else if ((roll -= settings.consumeRate) < settings.restoreRate) {
+                pool.restoreMana(random.nextDouble(settings.maxAmount));
+            } else if ((roll -= settings.restoreRate) < settings.modifierRate) {
+                ManaPoolType type = POOL_TYPES[random.nextInt(POOL_TYPES.length)];
+                pool.applyMaxModifier(type, random.nextBoolean() ? 25.0 : -25.0);
+            } else if (roll - settings.modifierRate < settings.readRate) {
+                pool.getTotalPercent();
+            }
+        }
+    }
+
+    private void report(long[] samples, long allocatedBytes) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(samples).average().orElse(0);
+        ManaPoolStore store = ManaComponents.store();
+
+        print("Mana load simulation (%s regeneration)", settings.eager ? "eager" : "lazy");
+        print("  players            %d", settings.players);
+        print("  measured ticks     %d (after %d warmup)", settings.ticks, settings.warmupTicks);
+        print("  tick mean          %.3f ms", mean / 1.0e6);
+        print("  tick p50           %.3f ms", percentile(sorted, 0.50) / 1.0e6);
+        print("  tick p99           %.3f ms", percentile(sorted, 0.99) / 1.0e6);
+        print("  tick max           %.3f ms", sorted[sorted.length - 1] / 1.0e6);
+        print("  share of MSPT      %.2f %%", mean / TICK_BUDGET_NANOS * 100);
+        if (allocatedBytes >= 0) {
+            print("  allocated / tick   %d bytes", allocatedBytes / settings.ticks);
+        } else {
+            print("  allocated / tick   unavailable on this JVM");
+        }
+        print("  regenerating       %d", store.activeCount());
+        print("  store footprint    %d bytes (%d per slot)", store.estimatedMemoryBytes(),
+                ManaPoolStore.bytesPerSlot());
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Gets the bytes allocated so far by the current thread, or -1 if the JVM cannot tell.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            return bean.getThreadAllocatedBytes(Thread.currentThread().threadId());
+        }
+        return -1;
+    }
+
+    private static void print(String format, Object... args) {
+        System.out.println(String.format(Locale.ROOT, format, args));
+    }
+
+    /**
+     * Simulation parameters. Rates are per player per tick.
+     */
+    private static final class Settings {
+        int players = 1000;
+        int ticks = 1200;
+        int warmupTicks = 200;
+        double consumeRate = 0.05;
+        double restoreRate = 0.01;
+        double modifierRate = 0.002;
+        double readRate = 0.1;
+        double maxAmount = 50.0;
+        boolean eager;
+        long seed = 42L;
+
+        static Settings parse(String[] args) {
+            Settings settings = new Settings();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--players" -> settings.players = Integer.parseInt(args[++i]);
+                    case "--ticks" -> settings.ticks = Integer.parseInt(args[++i]);
+                    case "--warmup" -> settings.warmupTicks = Integer.parseInt(args[++i]);
+                    case "--consume-rate" -> settings.consumeRate = Double.parseDouble(args[++i]);
+                    case "--restore-rate" -> settings.restoreRate = Double.parseDouble(args[++i]);
+                    case "--modifier-rate" ->
+                        settings.modifierRate = Double.parseDouble(args[++i]);
+                    case "--read-rate" -> settings.readRate = Double.parseDouble(args[++i]);
+                    case "--max-amount" -> settings.maxAmount = Double.parseDouble(args[++i]);
+                    case "--eager" -> settings.eager = true;
+                    case "--seed" -> settings.seed = Long.parseLong(args[++i]);
+                    default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+            }
+            if (settings.players <= 0 || settings.ticks <= 0) {
+                throw new IllegalArgumentException("--players and --ticks must be positive");
+            }
+            return settings;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package dk.mosberg.mana;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import dk.mosberg.mana.ManaPool.ManaPoolType;
+import net.minecraft.nbt.NbtCompound;
+
+/**
+ * Checks that {@link ManaPoolCodec} round-trips pools through the compact layout, falls back to
+ * lossless values when they do not fit fixed point, and migrates the legacy keyed layout.
+ */
+class ManaPoolCodecTest {
+
+    // Half a fixed-point step
+    private static final double FIXED_EPSILON = 0.5 / 1000;
+
+    @Test
+    void fixedPointRoundTrip() {
+        ManaPool pool = new ManaPool(250.125, 512.3456, 1000);
+        pool.setMana(ManaPoolType.PRIMARY, 12.3456);
+        pool.setMana(ManaPoolType.SECONDARY, 0.0004);
+        pool.setMana(ManaPoolType.TERTIARY, 999.9996);
+
+        ManaPool restored = roundTrip(pool);
+
+        assertEquals(12.3456, restored.getPrimaryMana(), FIXED_EPSILON);
+        assertEquals(0.0004, restored.getSecondaryMana(), FIXED_EPSILON);
+        assertEquals(999.9996, restored.getTertiaryMana(), FIXED_EPSILON);
+        assertEquals(250.125, restored.getPrimaryPoolValue(), FIXED_EPSILON);
+        assertEquals(512.3456, restored.getSecondaryPoolValue(), FIXED_EPSILON);
+        assertEquals(1000, restored.getTertiaryPoolValue(), FIXED_EPSILON);
+        assertTrue(restored.isRegenerating());
+    }
+
+    @Test
+    void wideValuesRoundTripLosslessly() {
+        double poolValue = 1e12 + 0.123;
+        ManaPool pool = new ManaPool(poolValue, 500, 1000);
+        pool.setMana(ManaPoolType.PRIMARY, poolValue - 0.1);
+        pool.setMana(ManaPoolType.SECONDARY, 123.4567891);
+
+        ManaPool restored = roundTrip(pool);
+
+        assertEquals(poolValue, restored.getPrimaryPoolValue(), 0);
+        assertEquals(poolValue - 0.1, restored.getPrimaryMana(), 0);
+        assertEquals(123.4567891, restored.getSecondaryMana(), 0);
+        assertEquals(1000, restored.getTertiaryMana(), 0);
+    }
+
+    @Test
+    void regeneratingFlagRoundTrips() {
+        ManaPool pool = new ManaPool();
+        pool.setRegenerating(false);
+
+        assertFalse(roundTrip(pool).isRegenerating());
+    }
+
+    @Test
+    void compactLayoutReplacesLegacyKeys() {
+        NbtCompound nbt = ManaPoolCodec.write(new ManaPool(), new NbtCompound());
+
+        assertTrue(nbt.contains(ManaPoolCodec.TAG));
+        assertFalse(nbt.contains("PrimaryMana"));
+        assertFalse(nbt.contains("Regenerating"));
+    }
+
+    @Test
+    void compactDataLoadsClean() {
+        ManaPool restored = roundTrip(new ManaPool());
+
+        assertFalse(restored.isDirty());
+    }
+
+    @Test
+    void legacyDataMigrates() {
+        ManaPool pool = new ManaPool(300, 600, 1200);
+        pool.setMana(ManaPoolType.PRIMARY, 12.3456789);
+        pool.setMana(ManaPoolType.TERTIARY, 7);
+        pool.setRegenerating(false);
+        NbtCompound legacy = ManaPoolCodec.writeLegacy(pool, new NbtCompound());
+
+        ManaPool migrated = new ManaPool();
+        ManaPoolCodec.read(migrated, legacy);
+
+        assertEquals(12.3456789, migrated.getPrimaryMana(), 0);
+        assertEquals(600, migrated.getSecondaryMana(), 0);
+        assertEquals(7, migrated.getTertiaryMana(), 0);
+        assertEquals(300, migrated.getPrimaryPoolValue(), 0);
+        assertEquals(600, migrated.getSecondaryPoolValue(), 0);
+        assertEquals(1200, migrated.getTertiaryPoolValue(), 0);
+        assertFalse(migrated.isRegenerating());
+        // Left dirty so the next save rewrites it in the compact layout
+        assertTrue(migrated.isDirty());
+    }
+
+    @Test
+    void missingLegacyKeysFallBackToFullDefaultPools() {
+        ManaPool pool = new ManaPool(10, 10, 10);
+        pool.setMana(ManaPool.ALL_POOLS, 0);
+
+        ManaPoolCodec.read(pool, new NbtCompound());
+
+        assertEquals(ManaPool.DEFAULT_PRIMARY_POOL_VALUE, pool.getPrimaryMana(), 0);
+        assertEquals(ManaPool.DEFAULT_SECONDARY_POOL_VALUE, pool.getSecondaryMana(), 0);
+        assertEquals(ManaPool.DEFAULT_TERTIARY_POOL_VALUE, pool.getTertiaryMana(), 0);
+        assertTrue(pool.isRegenerating());
+    }
+
+    @Test
+    void unknownVersionLeavesPoolUnchanged() {
+        ManaPool pool = new ManaPool();
+        pool.setMana(ManaPoolType.PRIMARY, 42);
+        NbtCompound nbt = new NbtCompound();
+        nbt.putIntArray(ManaPoolCodec.TAG, new int[] {(ManaPoolCodec.VERSION + 1) << 8, 1, 2, 3,
+                4, 5, 6});
+
+        ManaPoolCodec.read(pool, nbt);
+
+        assertEquals(42, pool.getPrimaryMana(), 0);
+        assertEquals(ManaPool.DEFAULT_PRIMARY_POOL_VALUE, pool.getPrimaryPoolValue(), 0);
+    }
+
+    @Test
+    void truncatedDataLeavesPoolUnchanged() {
+        ManaPool pool = new ManaPool();
+        pool.setMana(ManaPoolType.PRIMARY, 42);
+        NbtCompound nbt = new NbtCompound();
+        nbt.putIntArray(ManaPoolCodec.TAG, new int[] {ManaPoolCodec.VERSION << 8, 1, 2, 3});
+
+        ManaPoolCodec.read(pool, nbt);
+
+        assertEquals(42, pool.getPrimaryMana(), 0);
+    }
+
+    private static ManaPool roundTrip(ManaPool pool) {
+        NbtCompound nbt = ManaPoolCodec.write(pool, new NbtCompound());
+        ManaPool restored = new ManaPool(1, 1, 1);
+        ManaPoolCodec.read(restored, nbt);
+        return restored;
+    }
+}
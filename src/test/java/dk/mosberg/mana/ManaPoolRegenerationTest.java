@@ -0,0 +1,82 @@
+package dk.mosberg.mana;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Checks that closed-form regeneration matches regenerating one tick at a time, both for
+ * {@link ManaPool#regenerate} itself and for pools read lazily against pools ticked every tick.
+ */
+class ManaPoolRegenerationTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 19, 20, 21, 100, 999, 5000})
+    void closedFormMatchesStepwise(int ticks) {
+        double[] rates = {ManaPool.REGEN_RATE_PRIMARY, ManaPool.REGEN_RATE_SECONDARY,
+                ManaPool.REGEN_RATE_TERTIARY};
+        for (double rate : rates) {
+            double stepwise = 10.0;
+            for (int i = 0; i < ticks; i++) {
+                stepwise = ManaPool.regenerate(stepwise, 250.0, rate, 1);
+            }
+            assertEquals(stepwise, ManaPool.regenerate(10.0, 250.0, rate, ticks), EPSILON);
+        }
+    }
+
+    @Test
+    void regenerationStopsAtMax() {
+        assertEquals(250.0, ManaPool.regenerate(249.99, 250.0, 1.0, 20), 0);
+        assertEquals(250.0, ManaPool.regenerate(0.0, 250.0, 1.0, 1_000_000), 0);
+    }
+
+    @Test
+    void regenerationLeavesOverfilledPoolAlone() {
+        assertEquals(300.0, ManaPool.regenerate(300.0, 250.0, 1.0, 100), 0);
+    }
+
+    @Test
+    void regenerationIgnoresNonPositiveElapsedTicks() {
+        assertEquals(10.0, ManaPool.regenerate(10.0, 250.0, 1.0, 0), 0);
+        assertEquals(10.0, ManaPool.regenerate(10.0, 250.0, 1.0, -5), 0);
+    }
+
+    @Test
+    void lazyPoolMatchesTickedPool() {
+        ManaPool ticked = new ManaPool();
+        ManaPool lazy = new ManaPool();
+        ticked.setMana(ManaPool.ALL_POOLS, 0);
+        lazy.setMana(ManaPool.ALL_POOLS, 0);
+
+        int ticks = 4321;
+        for (int i = 0; i < ticks; i++) {
+            ManaClock.advance();
+            ticked.tick();
+        }
+
+        assertEquals(ticked.getPrimaryMana(), lazy.getPrimaryMana(), EPSILON);
+        assertEquals(ticked.getSecondaryMana(), lazy.getSecondaryMana(), EPSILON);
+        assertEquals(ticked.getTertiaryMana(), lazy.getTertiaryMana(), EPSILON);
+        assertEquals(ManaPool.regenerate(0, lazy.getPrimaryMax(), ManaPool.REGEN_RATE_PRIMARY,
+                ticks), lazy.getPrimaryMana(), EPSILON);
+        assertEquals(ManaPool.regenerate(0, lazy.getSecondaryMax(),
+                ManaPool.REGEN_RATE_SECONDARY, ticks), lazy.getSecondaryMana(), EPSILON);
+        assertEquals(ManaPool.regenerate(0, lazy.getTertiaryMax(),
+                ManaPool.REGEN_RATE_TERTIARY, ticks), lazy.getTertiaryMana(), EPSILON);
+    }
+
+    @Test
+    void pausedPoolDoesNotRegenerate() {
+        ManaPool pool = new ManaPool();
+        pool.setMana(ManaPool.ALL_POOLS, 0);
+        pool.setRegenerating(false);
+        for (int i = 0; i < 100; i++) {
+            ManaClock.advance();
+        }
+
+        assertEquals(0, pool.getTotalMana(), 0);
+    }
+}
@@ -0,0 +1,120 @@
+package dk.mosberg.mana;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that {@link ManaRecordFile} grows its mapping and index past the initial capacity and
+ * that every record survives closing and reopening the file.
+ */
+class ManaRecordFileTest {
+
+    // Past the initial capacity of 1024, so the file has to grow and rehash its index
+    private static final int PLAYERS = 1500;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recordsSurviveGrowthAndReopen() throws IOException {
+        Path file = directory.resolve("mana.dat");
+        try (ManaRecordFile records = ManaRecordFile.open(file)) {
+            long initialBytes = records.mappedBytes();
+            for (int i = 0; i < PLAYERS; i++) {
+                records.writeFrom(player(i), pool(i));
+            }
+
+            assertEquals(PLAYERS, records.size());
+            assertTrue(records.mappedBytes() > initialBytes);
+            assertTrue(records.mappedBytes() >= (long) PLAYERS * ManaRecordFile.RECORD_SIZE);
+        }
+
+        try (ManaRecordFile records = ManaRecordFile.open(file)) {
+            assertEquals(PLAYERS, records.size());
+            for (int i = 0; i < PLAYERS; i++) {
+                ManaPool restored = new ManaPool();
+                assertTrue(records.readInto(player(i), restored));
+                assertPool(i, restored);
+            }
+        }
+    }
+
+    @Test
+    void rewritingAPlayerKeepsOneRecord() throws IOException {
+        try (ManaRecordFile records = ManaRecordFile.open(directory.resolve("mana.dat"))) {
+            UUID playerId = player(7);
+            records.writeFrom(playerId, pool(7));
+            records.writeFrom(playerId, pool(42));
+
+            assertEquals(1, records.size());
+            ManaPool restored = new ManaPool();
+            assertTrue(records.readInto(playerId, restored));
+            assertPool(42, restored);
+        }
+    }
+
+    @Test
+    void writeConsumesRecordBuffer() throws IOException {
+        try (ManaRecordFile records = ManaRecordFile.open(directory.resolve("mana.dat"))) {
+            ByteBuffer record = ByteBuffer.allocate(ManaPool.RECORD_BYTES);
+            pool(3).writeRecord(record);
+            record.flip();
+            records.write(player(3), record);
+
+            assertFalse(record.hasRemaining());
+            ManaPool restored = new ManaPool();
+            assertTrue(records.readInto(player(3), restored));
+            assertPool(3, restored);
+        }
+    }
+
+    @Test
+    void unknownPlayerHasNoRecord() throws IOException {
+        try (ManaRecordFile records = ManaRecordFile.open(directory.resolve("mana.dat"))) {
+            records.writeFrom(player(1), pool(1));
+
+            ManaPool untouched = new ManaPool();
+            assertFalse(records.readInto(player(2), untouched));
+            assertEquals(250.0, untouched.getPrimaryMana(), 0);
+        }
+    }
+
+    @Test
+    void foreignFileIsRejected() throws IOException {
+        Path file = directory.resolve("other.dat");
+        Files.write(file, new byte[64]);
+
+        assertThrows(IOException.class, () -> ManaRecordFile.open(file));
+    }
+
+    private static UUID player(int i) {
+        return new UUID(0x6D616E61L, i);
+    }
+
+    private static ManaPool pool(int i) {
+        ManaPool pool = new ManaPool(100 + i, 500, 1000);
+        pool.setMana(ManaPool.ManaPoolType.PRIMARY, i % 100);
+        pool.setMana(ManaPool.ManaPoolType.SECONDARY, i % 500 + 0.25);
+        pool.setRegenerating(i % 2 == 0);
+        return pool;
+    }
+
+    private static void assertPool(int i, ManaPool pool) {
+        assertEquals(100 + i, pool.getPrimaryPoolValue(), 0);
+        assertEquals(500, pool.getSecondaryPoolValue(), 0);
+        assertEquals(1000, pool.getTertiaryPoolValue(), 0);
+        assertEquals(i % 100, pool.getPrimaryMana(), 0);
+        assertEquals(i % 500 + 0.25, pool.getSecondaryMana(), 0);
+        assertEquals(1000, pool.getTertiaryMana(), 0);
+        assertEquals(i % 2 == 0, pool.isRegenerating());
+    }
+}
@@ -0,0 +1,150 @@
+package dk.mosberg.mana;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Checks that {@link ManaTimerWheel} runs every timer exactly at its expiry tick, whether it sits
+ * in level 0, cascades down from a higher level, or is parked beyond the wheel's span.
+ */
+class ManaTimerWheelTest {
+
+    // Not slot-aligned, so cascades happen part way through a timer's delay
+    private static final long START = 1_000_003;
+    // Ticks the four levels of 64 slots span
+    private static final long SPAN = 1L << 24;
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 63, 64, 65, 4095, 4096, 4097, 262_143, 262_144, 262_145})
+    void timerCascadesToItsExpiryTick(int delay) {
+        ManaTimerWheel wheel = new ManaTimerWheel(START);
+        long[] ranAt = {-1};
+        long[] tick = {START};
+        wheel.schedule(START + delay, () -> ranAt[0] = tick[0]);
+
+        while (tick[0] < START + delay + 64) {
+            wheel.advance(++tick[0]);
+        }
+
+        assertEquals(START + delay, ranAt[0]);
+        assertEquals(0, wheel.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {SPAN - 1, SPAN, SPAN + 1, 2 * SPAN + 12_345})
+    void timerBeyondTheSpanIsParkedUntilDue(long delay) {
+        ManaTimerWheel wheel = new ManaTimerWheel(START);
+        int[] runs = {0};
+        wheel.schedule(START + delay, () -> runs[0]++);
+
+        wheel.advance(START + delay - 1);
+        assertEquals(0, runs[0]);
+        assertEquals(1, wheel.size());
+
+        wheel.advance(START + delay);
+        assertEquals(1, runs[0]);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void bulkAdvanceRunsTimersInExpiryOrder() {
+        ManaTimerWheel wheel = new ManaTimerWheel(START);
+        List<Long> ran = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            long expiry = START + 1 + random.nextInt(300_000);
+            wheel.schedule(expiry, () -> ran.add(expiry));
+        }
+
+        wheel.advance(START + 300_000);
+
+        assertEquals(1000, ran.size());
+        for (int i = 1; i < ran.size(); i++) {
+            assertTrue(ran.get(i - 1) <= ran.get(i));
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledTimerNeverRuns() {
+        ManaTimerWheel wheel = new ManaTimerWheel(START);
+        int[] runs = {0};
+        ManaTimerWheel.Timer cancelled = wheel.schedule(START + 5000, () -> runs[0]++);
+        ManaTimerWheel.Timer kept = wheel.schedule(START + 10, () -> runs[0]++);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertEquals(1, wheel.size());
+
+        wheel.advance(START + 10_000);
+        assertEquals(1, runs[0]);
+        assertFalse(kept.cancel());
+    }
+
+    @Test
+    void failingActionDoesNotDropOtherTimers() {
+        ManaTimerWheel wheel = new ManaTimerWheel(START);
+        List<Long> ran = new ArrayList<>();
+        wheel.schedule(START + 5, () -> ran.add(START + 5));
+        wheel.schedule(START + 10, () -> {
+            throw new IllegalStateException("Broken action");
+        });
+        wheel.schedule(START + 10, () -> ran.add(START + 10));
+        wheel.schedule(START + 20, () -> ran.add(START + 20));
+
+        wheel.advance(START + 20);
+
+        assertEquals(List.of(START + 5, START + 10, START + 20), ran);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void overdueTimerRunsOnTheNextTick() {
+        ManaTimerWheel wheel = new ManaTimerWheel(START);
+        int[] runs = {0};
+        wheel.schedule(START - 50, () -> runs[0]++);
+        wheel.schedule(START, () -> runs[0]++);
+
+        wheel.advance(START + 1);
+
+        assertEquals(2, runs[0]);
+    }
+
+    @Test
+    void actionMayScheduleTimers() {
+        ManaTimerWheel wheel = new ManaTimerWheel(START);
+        List<Long> ran = new ArrayList<>();
+        wheel.schedule(START + 1, () -> {
+            ran.add(START + 1);
+            wheel.schedule(START + 100, () -> ran.add(START + 100));
+        });
+
+        wheel.advance(START + 1);
+        assertEquals(1, wheel.size());
+        wheel.advance(START + 100);
+
+        assertEquals(List.of(START + 1, START + 100), ran);
+    }
+
+    @Test
+    void clearCancelsEveryTimer() {
+        ManaTimerWheel wheel = new ManaTimerWheel(START);
+        int[] runs = {0};
+        ManaTimerWheel.Timer timer = wheel.schedule(START + 1, () -> runs[0]++);
+        wheel.schedule(START + SPAN * 3, () -> runs[0]++);
+
+        wheel.clear();
+
+        assertEquals(0, wheel.size());
+        assertFalse(timer.cancel());
+        wheel.advance(START + 100);
+        assertEquals(0, runs[0]);
+    }
+}
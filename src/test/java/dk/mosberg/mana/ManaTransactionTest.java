@@ -0,0 +1,122 @@
+package dk.mosberg.mana;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import dk.mosberg.mana.ManaPool.ManaPoolType;
+
+/**
+ * Checks that a {@link ManaTransaction} applies all of its operations or, when one fails, leaves
+ * every pool it touched exactly as it was.
+ */
+class ManaTransactionTest {
+
+    @Test
+    void commitAppliesEveryOperation() {
+        ManaPool caster = new ManaPool();
+        ManaPool target = new ManaPool();
+
+        boolean committed = new ManaTransaction()
+                .consume(caster, ManaPoolType.SECONDARY, 40)
+                .transfer(target, caster, 15)
+                .adjustPoolValue(target, ManaPoolType.TERTIARY, 100)
+                .commit();
+
+        assertTrue(committed);
+        assertEquals(250, caster.getPrimaryMana(), 0);
+        assertEquals(475, caster.getSecondaryMana(), 0);
+        assertEquals(235, target.getPrimaryMana(), 0);
+        assertEquals(1100, target.getTertiaryPoolValue(), 0);
+        assertEquals(1100, target.getTertiaryMana(), 0);
+    }
+
+    @Test
+    void failedOperationRollsBackEveryPool() {
+        ManaPool caster = new ManaPool();
+        ManaPool target = new ManaPool();
+        caster.setMana(ManaPoolType.PRIMARY, 10);
+        target.setMana(ManaPool.ALL_POOLS, 0);
+        double[] casterBefore = state(caster);
+        double[] targetBefore = state(target);
+
+        boolean committed = new ManaTransaction()
+                .adjustPoolValue(caster, ManaPoolType.PRIMARY, 50)
+                .transfer(caster, target, 30)
+                .consume(target, ManaPoolType.PRIMARY, 5)
+                .restore(target, 100)
+                .consume(caster, ManaPoolType.TERTIARY, 5000)
+                .commit();
+
+        assertFalse(committed);
+        assertArrayEquals(casterBefore, state(caster));
+        assertArrayEquals(targetBefore, state(target));
+    }
+
+    @Test
+    void negativePoolValueFailsTheTransaction() {
+        ManaPool pool = new ManaPool();
+        double[] before = state(pool);
+
+        boolean committed = new ManaTransaction()
+                .consume(pool, 100)
+                .adjustPoolValue(pool, ManaPoolType.PRIMARY, -1000)
+                .commit();
+
+        assertFalse(committed);
+        assertArrayEquals(before, state(pool));
+    }
+
+    @Test
+    void rollbackKeepsRegenerationSinceTheLastChange() {
+        ManaPool pool = new ManaPool();
+        pool.setMana(ManaPoolType.PRIMARY, 0);
+        advance(20);
+
+        assertFalse(new ManaTransaction()
+                .consume(pool, ManaPoolType.PRIMARY, 0.5)
+                .consume(pool, ManaPoolType.PRIMARY, 1000)
+                .commit());
+        advance(20);
+
+        // Neither lost nor counted twice by the settle and restore of the rolled-back commit
+        assertEquals(ManaPool.regenerate(0, 250, ManaPool.REGEN_RATE_PRIMARY, 40),
+                pool.getPrimaryMana(), 1e-9);
+    }
+
+    @Test
+    void commitEmptiesTheTransactionForReuse() {
+        ManaPool pool = new ManaPool();
+        ManaTransaction transaction = new ManaTransaction().consume(pool, 5000);
+
+        assertFalse(transaction.commit());
+        assertEquals(0, transaction.size());
+
+        assertTrue(transaction.consume(pool, 50).commit());
+        assertEquals(200, pool.getPrimaryMana(), 0);
+    }
+
+    @Test
+    void invalidAmountIsRejected() {
+        ManaPool pool = new ManaPool();
+        ManaTransaction transaction = new ManaTransaction();
+
+        assertThrows(IllegalArgumentException.class, () -> transaction.consume(pool, -1));
+        assertThrows(IllegalArgumentException.class, () -> transaction.restore(pool, Double.NaN));
+        assertEquals(0, transaction.size());
+    }
+
+    private static double[] state(ManaPool pool) {
+        return new double[] {pool.getPrimaryMana(), pool.getSecondaryMana(),
+                pool.getTertiaryMana(), pool.getPrimaryPoolValue(), pool.getSecondaryPoolValue(),
+                pool.getTertiaryPoolValue()};
+    }
+
+    private static void advance(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            ManaClock.advance();
+        }
+    }
+}
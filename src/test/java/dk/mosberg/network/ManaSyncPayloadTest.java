@@ -0,0 +1,91 @@
+package dk.mosberg.network;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import io.netty.buffer.Unpooled;
+import net.minecraft.network.PacketByteBuf;
+
+/**
+ * Checks that {@link ManaSyncPayload#CODEC} round-trips full and partial payloads and only puts
+ * the masked fields on the wire.
+ */
+class ManaSyncPayloadTest {
+
+    @Test
+    void fullPayloadRoundTrips() {
+        long[] values = {25_000, 37_550, 1, 25_000, 50_000, 100_000_000_000_000L};
+        ManaSyncPayload payload =
+                new ManaSyncPayload(ManaSyncPayload.FULL | ManaSyncPayload.REGENERATING_ON, values);
+
+        ManaSyncPayload decoded = roundTrip(payload, -1);
+
+        assertEquals(payload.mask(), decoded.mask());
+        assertArrayEquals(values, decoded.values());
+        assertTrue(decoded.has(ManaSyncPayload.FULL));
+        assertTrue(decoded.regenerating());
+    }
+
+    @Test
+    void partialPayloadCarriesOnlyMaskedFields() {
+        long[] values = {12_345, 99, 99, 99, 99, 1};
+        int mask = 1 << ManaSyncPayload.PRIMARY | 1 << ManaSyncPayload.TERTIARY_MAX;
+        ManaSyncPayload payload = new ManaSyncPayload(mask, values);
+
+        // Mask byte, a two-byte and a one-byte var-long
+        ManaSyncPayload decoded = roundTrip(payload, 4);
+
+        assertEquals(mask, decoded.mask());
+        assertArrayEquals(new long[] {12_345, 0, 0, 0, 0, 1}, decoded.values());
+        assertTrue(decoded.has(1 << ManaSyncPayload.PRIMARY));
+        assertFalse(decoded.has(1 << ManaSyncPayload.SECONDARY));
+        assertFalse(decoded.has(ManaSyncPayload.REGENERATING));
+    }
+
+    @Test
+    void regeneratingFlagAloneIsOneByte() {
+        ManaSyncPayload on = new ManaSyncPayload(
+                ManaSyncPayload.REGENERATING | ManaSyncPayload.REGENERATING_ON,
+                new long[ManaSyncPayload.FIELDS]);
+        ManaSyncPayload off =
+                new ManaSyncPayload(ManaSyncPayload.REGENERATING, new long[ManaSyncPayload.FIELDS]);
+
+        ManaSyncPayload decodedOn = roundTrip(on, 1);
+        ManaSyncPayload decodedOff = roundTrip(off, 1);
+
+        assertTrue(decodedOn.has(ManaSyncPayload.REGENERATING));
+        assertTrue(decodedOn.regenerating());
+        assertTrue(decodedOff.has(ManaSyncPayload.REGENERATING));
+        assertFalse(decodedOff.regenerating());
+    }
+
+    @Test
+    void quantizedValuesConvertBack() {
+        assertEquals(12_346, ManaSyncPayload.quantize(123.456));
+        assertEquals(0, ManaSyncPayload.quantize(-5));
+
+        long[] values = new long[ManaSyncPayload.FIELDS];
+        values[ManaSyncPayload.SECONDARY] = ManaSyncPayload.quantize(375.5);
+        ManaSyncPayload payload = new ManaSyncPayload(1 << ManaSyncPayload.SECONDARY, values);
+
+        assertEquals(375.5, roundTrip(payload, -1).value(ManaSyncPayload.SECONDARY), 0);
+    }
+
+    /**
+     * Encodes and decodes a payload, checking the encoded size when it is not negative and that
+     * decoding consumes every byte.
+     */
+    private static ManaSyncPayload roundTrip(ManaSyncPayload payload, int expectedBytes) {
+        PacketByteBuf buf = new PacketByteBuf(Unpooled.buffer());
+        ManaSyncPayload.CODEC.encode(buf, payload);
+        if (expectedBytes >= 0) {
+            assertEquals(expectedBytes, buf.readableBytes());
+        }
+
+        ManaSyncPayload decoded = ManaSyncPayload.CODEC.decode(buf);
+        assertEquals(0, buf.readableBytes());
+        return decoded;
+    }
+}